@@ -0,0 +1,81 @@
+package it.lorenzoval.deliverable2;
+
+import org.apache.commons.io.FileUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Compares two JMH JSON result files benchmark by benchmark, e.g. a parallel, cached or incremental evaluation
+// mode against the baseline of EvaluationBenchmark:
+//   java -cp target/benchmarks.jar it.lorenzoval.deliverable2.BaselineComparison baseline.json other.json [out.csv]
+// Ratios above one mean the second run took longer, or allocated more, than the baseline
+public class BaselineComparison {
+
+    private static final Logger logger = Logger.getLogger(BaselineComparison.class.getName());
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+    private BaselineComparison() {
+    }
+
+    // Score and bytes allocated per operation, when profiled, by benchmark and parameters
+    private static Map<String, double[]> load(File file) throws IOException {
+        JSONArray results = new JSONArray(FileUtils.readFileToString(file, StandardCharsets.UTF_8));
+        Map<String, double[]> scores = new LinkedHashMap<>();
+        for (int i = 0; i < results.length(); i++) {
+            JSONObject result = results.getJSONObject(i);
+            StringBuilder key = new StringBuilder(result.getString("benchmark"));
+            JSONObject params = result.optJSONObject("params");
+            if (params != null)
+                for (String param : new TreeSet<>(params.keySet()))
+                    key.append(' ').append(param).append('=').append(params.getString(param));
+            double allocation = Double.NaN;
+            JSONObject secondary = result.optJSONObject("secondaryMetrics");
+            if (secondary != null)
+                // Named with a leading middle dot by some JMH versions
+                for (String metric : secondary.keySet())
+                    if (metric.endsWith(ALLOCATION))
+                        allocation = secondary.getJSONObject(metric).getDouble("score");
+            scores.put(key.toString(), new double[]{result.getJSONObject("primaryMetric").getDouble("score"),
+                    allocation});
+        }
+        return scores;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2)
+            throw new IllegalArgumentException("Expected the baseline and the run to compare to it");
+        Map<String, double[]> baseline = load(new File(args[0]));
+        Map<String, double[]> other = load(new File(args[1]));
+        List<String> lines = new ArrayList<>();
+        lines.add("Benchmark,BaselineScore,Score,ScoreRatio,BaselineBytes,Bytes,BytesRatio");
+        for (Map.Entry<String, double[]> entry : baseline.entrySet()) {
+            double[] compared = other.get(entry.getKey());
+            if (compared == null)
+                continue;
+            double[] base = entry.getValue();
+            String line = String.format(Locale.ROOT, "%s,%.3f,%.3f,%.3f,%.0f,%.0f,%.3f", entry.getKey(), base[0],
+                    compared[0], compared[0] / base[0], base[1], compared[1], compared[1] / base[1]);
+            lines.add(line);
+            if (logger.isLoggable(Level.INFO))
+                logger.log(Level.INFO, "{0}: time x{1}, allocation x{2}", new Object[]{entry.getKey(),
+                        String.format(Locale.ROOT, "%.2f", compared[0] / base[0]),
+                        String.format(Locale.ROOT, "%.2f", compared[1] / base[1])});
+        }
+        if (args.length > 2)
+            FileUtils.writeLines(new File(args[2]), StandardCharsets.UTF_8.name(), lines);
+        if (lines.size() == 1)
+            logger.log(Level.WARNING, "No benchmark in common between {0} and {1}", new Object[]{args[0], args[1]});
+    }
+
+}
@@ -0,0 +1,190 @@
+package it.lorenzoval.deliverable2;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.attributeSelection.AttributeSelection;
+import weka.attributeSelection.BestFirst;
+import weka.attributeSelection.CfsSubsetEval;
+import weka.classifiers.CostMatrix;
+import weka.classifiers.evaluation.Evaluation;
+import weka.core.Instances;
+import weka.core.converters.CSVLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+// One cell of the evaluation grid on the last fold of a generated metrics dataset, as run by WekaHandler without
+// cache hits: train measures balancing, training and predicting the testing set, with or without the cost sensitive
+// classifier, evaluate the metrics computed from those predictions for each cost setting. Thresholding does not
+// change training, so train only varies whether the cost sensitive classifier is learnt. Run with -prof gc for the
+// allocation per cell, or through the baseline profile of the pom, whose JSON results are what BaselineComparison
+// compares other evaluation modes against
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EvaluationBenchmark {
+
+    private static final long SEED = 42;
+    // Half of them main releases, that is folds
+    private static final int RELEASES = 20;
+    @Param({"weka.classifiers.bayes.NaiveBayes", "weka.classifiers.trees.RandomForest", "weka.classifiers.lazy.IBk"})
+    public String classifier;
+    @Param({EvaluationPlan.NO_SAMPLING, EvaluationPlan.OVERSAMPLING, EvaluationPlan.UNDERSAMPLING,
+            EvaluationPlan.SMOTE})
+    public String balancing;
+    @Param({EvaluationPlan.NO_SELECTION, EvaluationPlan.BEST_FIRST})
+    public String featureSelection;
+    // Files of each release, so rows of the dataset are ten times as many
+    @Param({"100", "1000"})
+    public int files;
+    @Param({"5", "20", "50"})
+    public int buggyPercent;
+    private File directory;
+    private WalkForwardFolds folds;
+    private Instances testingSet;
+    private int release;
+    private int[] selected;
+    private CostMatrix costMatrix;
+
+    private static double percentage(int buggy, int size) {
+        // Same as the one WekaHandler gives to the oversampling filters
+        int nonBuggy = size - buggy;
+        if (nonBuggy > buggy)
+            return buggy != 0 ? 100.0 * (nonBuggy - buggy) / buggy : 0;
+        else
+            return nonBuggy != 0 ? 100.0 * (buggy - nonBuggy) / nonBuggy : 0;
+    }
+
+    private static int[] selectAttributes(Instances trainingSet) throws Exception {
+        AttributeSelection attributeSelection = new AttributeSelection();
+        attributeSelection.setEvaluator(new CfsSubsetEval());
+        attributeSelection.setSearch(new BestFirst());
+        attributeSelection.SelectAttributes(trainingSet);
+        return attributeSelection.selectedAttributes();
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.directory = Files.createTempDirectory("evaluation-benchmark").toFile();
+        Project project = new Project("", new File(this.directory, "benchmark").getPath(), "release-{0}", 0.01);
+        ReleasesList releasesList = SyntheticHistory.releases(RELEASES, this.files, RELEASES * this.files, 0, SEED);
+        SyntheticHistory.setBuggyFiles(releasesList, this.files, this.buggyPercent, SEED);
+        Deliverable2.writeDatasetToCSV(project, releasesList.getMain());
+        // Loaded as WekaHandler does
+        CSVLoader loader = new CSVLoader();
+        loader.setSource(Deliverable2.metricsFileFor(project));
+        loader.setNominalLabelSpecs(new Object[]{"Buggy:Yes,No"});
+        Instances dataset = loader.getDataSet();
+        dataset.setClassIndex(dataset.numAttributes() - 1);
+
+        this.folds = new WalkForwardFolds(dataset);
+        this.release = this.folds.getNumReleases();
+        this.testingSet = this.folds.getTestingSet(this.release);
+        // Searched once per fold and shared by all its cells, so not part of the cell
+        this.selected = EvaluationPlan.BEST_FIRST.equals(this.featureSelection) ?
+                selectAttributes(this.folds.getTrainingCopy(this.release)) : null;
+        this.costMatrix = new EvaluationPlan.CostSpec(null, 1.0, 10.0).create();
+    }
+
+    private CellTask task(boolean learning) {
+        return new CellTask(this.release, this.featureSelection, this.selected, this.balancing,
+                percentage(this.folds.getBuggyInTraining(this.release), this.folds.getTrainingSize(this.release)),
+                this.classifier, new String[0], this.costMatrix, true, learning);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(this.directory);
+    }
+
+    @Benchmark
+    public CellResult train(Training training, ColdCache cache) throws Exception {
+        return WekaHandler.trainCell(cache.cache, this.folds, training.task);
+    }
+
+    @Benchmark
+    public Evaluation evaluate(Scoring scoring) throws Exception {
+        if (EvaluationPlan.SENSITIVE_LEARNING.equals(scoring.sensitivity))
+            return Predictions.of(this.testingSet, scoring.trained.getLearningDistributions()).evaluate();
+        Predictions predictions = Predictions.of(this.testingSet, scoring.trained.getBaseDistributions());
+        if (EvaluationPlan.SENSITIVE_THRESHOLD.equals(scoring.sensitivity))
+            predictions = predictions.minimizeExpectedCost(this.costMatrix);
+        return predictions.evaluate();
+    }
+
+    // The cell as trained, with the cost sensitive classifier learnt as well or not
+    @State(Scope.Benchmark)
+    public static class Training {
+
+        @Param({"false", "true"})
+        public boolean learning;
+        private CellTask task;
+
+        @Setup(Level.Trial)
+        public void setUp(EvaluationBenchmark benchmark) {
+            this.task = benchmark.task(this.learning);
+        }
+
+    }
+
+    // Predictions of the cell, trained once, to evaluate for a cost setting
+    @State(Scope.Benchmark)
+    public static class Scoring {
+
+        @Param({EvaluationPlan.NO_COST_SENSITIVE, EvaluationPlan.SENSITIVE_THRESHOLD,
+                EvaluationPlan.SENSITIVE_LEARNING})
+        public String sensitivity;
+        private CellResult trained;
+
+        @Setup(Level.Trial)
+        public void setUp(EvaluationBenchmark benchmark) throws Exception {
+            this.trained = WekaHandler.trainCell(new DiskCache(new File(benchmark.directory, "trained"),
+                    Long.MAX_VALUE), benchmark.folds, benchmark.task(
+                    EvaluationPlan.SENSITIVE_LEARNING.equals(this.sensitivity)));
+        }
+
+    }
+
+    // Every cell is trained from scratch, storing what it trained as a cold run does
+    @State(Scope.Thread)
+    public static class ColdCache {
+
+        private File directory;
+        private DiskCache cache;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            this.directory = Files.createTempDirectory("evaluation-benchmark-cache").toFile();
+        }
+
+        @Setup(Level.Invocation)
+        public void empty() throws IOException {
+            FileUtils.cleanDirectory(this.directory);
+            this.cache = new DiskCache(this.directory, Long.MAX_VALUE);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            FileUtils.deleteDirectory(this.directory);
+        }
+
+    }
+
+}
@@ -0,0 +1,107 @@
+package it.lorenzoval.deliverable2;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Local stand in for the two JIRA endpoints JIRAHandler reads, answering for the synthetic repositories added to it.
+// Pages are capped at 1000 issues as on the Apache instance
+final class JiraStub implements AutoCloseable {
+
+    private static final String PROJECT_PATH = "/rest/api/2/project/";
+    private static final String SEARCH_PATH = "/rest/api/2/search";
+    private static final int PAGE_SIZE = 1000;
+    private static final Pattern PROJECT_KEY = Pattern.compile("project=\"([^\"]+)\"");
+    private final HttpServer server;
+    private final Map<String, SyntheticRepository> repositories = new ConcurrentHashMap<>();
+
+    private JiraStub(HttpServer server) {
+        this.server = server;
+    }
+
+    static JiraStub start() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        JiraStub stub = new JiraStub(server);
+        server.createContext(PROJECT_PATH, stub::project);
+        server.createContext(SEARCH_PATH, stub::search);
+        server.start();
+        return stub;
+    }
+
+    // Base URL to give to the projects, as Project.getJiraUrl
+    String getUrl() {
+        return "http://" + this.server.getAddress().getHostString() + ":" + this.server.getAddress().getPort();
+    }
+
+    void add(SyntheticRepository repository) {
+        this.repositories.put(repository.getKey(), repository);
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) throws UnsupportedEncodingException {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null)
+            return parameters;
+        for (String parameter : query.split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals > 0)
+                parameters.put(parameter.substring(0, equals),
+                        URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8.name()));
+        }
+        return parameters;
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void notFound(HttpExchange exchange, String what) throws IOException {
+        send(exchange, 404, new JSONObject().put("errorMessages", new String[]{"No project " + what}).toString());
+    }
+
+    private void project(HttpExchange exchange) throws IOException {
+        String key = exchange.getRequestURI().getPath().substring(PROJECT_PATH.length());
+        SyntheticRepository repository = this.repositories.get(key);
+        if (repository == null)
+            notFound(exchange, key);
+        else
+            send(exchange, 200, repository.projectJson().toString());
+    }
+
+    private void search(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = query(exchange);
+        Matcher matcher = PROJECT_KEY.matcher(parameters.getOrDefault("jql", ""));
+        SyntheticRepository repository = matcher.find() ? this.repositories.get(matcher.group(1)) : null;
+        if (repository == null) {
+            notFound(exchange, parameters.get("jql"));
+            return;
+        }
+        int startAt = Integer.parseInt(parameters.getOrDefault("startAt", "0"));
+        int maxResults = Math.min(PAGE_SIZE, Integer.parseInt(parameters.getOrDefault("maxResults", "50")));
+        send(exchange, 200, repository.searchJson(startAt, maxResults).toString());
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+    }
+
+}
@@ -0,0 +1,94 @@
+package it.lorenzoval.deliverable2;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// From fetched bugs to the dataset: linking bugs to their fixing commits, proportion, labels and the CSV
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LabellingBenchmark {
+
+    private static final long SEED = 42;
+    @Param({"20"})
+    public int releases;
+    @Param({"1000"})
+    public int files;
+    @Param({"10000"})
+    public int commits;
+    @Param({"100", "1000"})
+    public int bugs;
+    private Project project;
+    private ReleasesList releasesList;
+    private List<Issue> fetched;
+    private List<Issue> linked;
+    private List<Issue> proportionList;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.project = new Project("", "benchmark", "release-{0}", 0.01);
+        this.releasesList = SyntheticHistory.releases(this.releases, this.files, this.commits, this.bugs, SEED);
+        this.fetched = SyntheticHistory.fetchedBugs(this.releasesList, this.bugs, SEED);
+    }
+
+    // Proportion fills in the affected versions it computes, so every call needs bugs that still lack them
+    @Setup(Level.Invocation)
+    public void freshBugs() {
+        this.proportionList = new ArrayList<>();
+        this.linked = SyntheticHistory.linkedBugs(this.releasesList, this.proportionList, this.bugs, SEED);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File csv = new File(this.project.getProjectName() + "_metrics.csv");
+        if (!csv.delete())
+            csv.deleteOnExit();
+    }
+
+    @Benchmark
+    public void updateAffectedFiles(Blackhole blackhole) {
+        for (Issue bug : this.fetched) {
+            blackhole.consume(JIRAHandler.updateAffectedFiles(this.releasesList.getMain(), bug, false));
+            blackhole.consume(JIRAHandler.updateAffectedFiles(this.releasesList.getDropped(), bug, true));
+        }
+    }
+
+    @Benchmark
+    public List<Issue> proportion() {
+        JIRAHandler.proportion(this.releasesList, this.linked, this.proportionList, this.project.getMovingWindow());
+        return this.linked;
+    }
+
+    @Benchmark
+    public ReleasesList setBuggyFiles() {
+        Deliverable2.setBuggyFiles(this.releasesList, this.linked);
+        return this.releasesList;
+    }
+
+    @Benchmark
+    public void writeDatasetToCSV() throws IOException {
+        Deliverable2.writeDatasetToCSV(this.project, this.releasesList.getMain());
+    }
+
+}
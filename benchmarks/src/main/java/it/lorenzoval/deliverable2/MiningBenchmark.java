@@ -0,0 +1,121 @@
+package it.lorenzoval.deliverable2;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Commit mining once git has answered: numstat parsing into the commit store, and release metrics computed from it
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MiningBenchmark {
+
+    @Param({"1000", "10000"})
+    public int commits;
+    @Param({"500", "5000"})
+    public int files;
+    private String log;
+    private File storeFile;
+    private CommitStore store;
+    private List<String> hashes;
+    private Release release;
+    private Metrics metrics;
+    private String[] authors;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.log = SyntheticHistory.numstatLog(this.commits, this.files, this.commits / 10, 42);
+        this.storeFile = File.createTempFile("benchmark", ".store");
+        // A store already holding every commit, for the in memory part
+        try (CommitStore filled = CommitStore.open(this.storeFile)) {
+            GitHandler.parseCommits(new BufferedReader(new StringReader(this.log)), filled);
+        }
+        this.store = CommitStore.open(this.storeFile);
+        this.hashes = new ArrayList<>();
+        for (int c = 0; c < this.commits; c++)
+            this.hashes.add(String.format("%040x", c));
+        this.authors = new String[this.commits];
+        for (int c = 0; c < this.commits; c++)
+            this.authors[c] = "Author " + c % 20;
+    }
+
+    @Setup(Level.Invocation)
+    public void freshRelease() {
+        this.release = new Release(SyntheticHistory.releaseName(1), LocalDate.of(2010, 1, 1),
+                LocalDate.of(2010, 1, 2));
+        for (int f = 0; f < this.files; f++)
+            this.release.addFile(SyntheticHistory.fileName(f), 100, LocalDate.of(2009, 1, 1));
+        this.metrics = new Metrics(100, LocalDate.of(2009, 1, 1), LocalDate.of(2010, 1, 1));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.store.close();
+        if (!this.storeFile.delete())
+            this.storeFile.deleteOnExit();
+    }
+
+    @Benchmark
+    public CommitStore parseNumstat() throws IOException {
+        File file = File.createTempFile("benchmark", ".store");
+        try (CommitStore parsed = CommitStore.open(file)) {
+            GitHandler.parseCommits(new BufferedReader(new StringReader(this.log)), parsed);
+            return parsed;
+        } finally {
+            if (!file.delete())
+                file.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public CommitStore openStore() throws IOException {
+        try (CommitStore opened = CommitStore.open(this.storeFile)) {
+            return opened;
+        }
+    }
+
+    @Benchmark
+    public Release releaseFromStore() {
+        for (String hash : this.hashes)
+            GitHandler.addCommit(this.store, this.release, this.store.get(hash), true);
+        return this.release;
+    }
+
+    @Benchmark
+    public Release releaseUpdateMetrics() {
+        for (int c = 0; c < this.commits; c++)
+            this.release.updateMetrics(SyntheticHistory.fileName(c % this.files), this.authors[c], 3, c % 100,
+                    c % 50);
+        return this.release;
+    }
+
+    @Benchmark
+    public void metricsUpdateFromCommit(Blackhole blackhole) {
+        for (int c = 0; c < this.commits; c++)
+            blackhole.consume(this.metrics.updateFromCommit(this.authors[c], 3, c % 100, c % 50));
+    }
+
+}
@@ -0,0 +1,86 @@
+package it.lorenzoval.deliverable2;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.classifiers.lazy.IBk;
+import weka.core.Instances;
+import weka.core.converters.CSVLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+// IBk with each neighbour search of EvaluationSettings on the last fold of a generated metrics dataset: building the
+// index over the training set and predicting every instance of the testing set, as an IBk cell of the evaluation does.
+// The last fold trains on nine releases, so the files of each release give training sets of about 2000, 10000 and
+// 40000 instances
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NeighbourSearchBenchmark {
+
+    private static final long SEED = 42;
+    // Half of them main releases, that is folds
+    private static final int RELEASES = 20;
+    private static final int BUGGY_PERCENT = 20;
+    @Param({"LINEAR", "KD_TREE", "BALL_TREE"})
+    public EvaluationSettings.NeighbourSearch search;
+    @Param({"220", "1100", "4400"})
+    public int files;
+    private File directory;
+    private Instances trainingSet;
+    private Instances testingSet;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.directory = Files.createTempDirectory("neighbour-search-benchmark").toFile();
+        Project project = new Project("", new File(this.directory, "benchmark").getPath(), "release-{0}", 0.01);
+        ReleasesList releasesList = SyntheticHistory.releases(RELEASES, this.files, RELEASES * this.files, 0, SEED);
+        SyntheticHistory.setBuggyFiles(releasesList, this.files, BUGGY_PERCENT, SEED);
+        Deliverable2.writeDatasetToCSV(project, releasesList.getMain());
+        // Loaded as WekaHandler does
+        CSVLoader loader = new CSVLoader();
+        loader.setSource(Deliverable2.metricsFileFor(project));
+        loader.setNominalLabelSpecs(new Object[]{"Buggy:Yes,No"});
+        Instances dataset = loader.getDataSet();
+        dataset.setClassIndex(dataset.numAttributes() - 1);
+
+        WalkForwardFolds folds = new WalkForwardFolds(dataset);
+        int release = folds.getNumReleases();
+        this.trainingSet = folds.getTrainingCopy(release);
+        this.testingSet = folds.getTestingSet(release);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(this.directory);
+    }
+
+    @Benchmark
+    public double[][] trainAndPredict() throws Exception {
+        IBk ibk = new IBk();
+        ibk.setNearestNeighbourSearchAlgorithm(this.search.create());
+        ibk.buildClassifier(this.trainingSet);
+        double[][] distributions = new double[this.testingSet.size()][];
+        for (int i = 0; i < distributions.length; i++)
+            distributions[i] = ibk.distributionForInstance(this.testingSet.get(i));
+        return distributions;
+    }
+
+}
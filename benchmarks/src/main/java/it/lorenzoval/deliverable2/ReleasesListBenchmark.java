@@ -0,0 +1,73 @@
+package it.lorenzoval.deliverable2;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Release lookups done once per bug and per affected version while linking issues
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReleasesListBenchmark {
+
+    private static final int QUERIES = 1000;
+    @Param({"20", "200"})
+    public int releases;
+    private ReleasesList releasesList;
+    private String[] names;
+    private LocalDate[] dates;
+    private double[] injected;
+    private int[] fixed;
+
+    @Setup
+    public void setUp() {
+        this.releasesList = SyntheticHistory.releases(this.releases, 1, 0, 0, 42);
+        Random random = new Random(42);
+        this.names = new String[QUERIES];
+        this.dates = new LocalDate[QUERIES];
+        this.injected = new double[QUERIES];
+        this.fixed = new int[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            // Names and dates of dropped releases too, as JIRA declares them
+            this.names[i] = SyntheticHistory.releaseName(1 + random.nextInt(this.releases));
+            this.dates[i] = LocalDate.of(2010, 1, 1).plusDays(random.nextInt(30 * this.releases));
+            this.fixed[i] = 2 + random.nextInt(this.releases - 1);
+            this.injected[i] = 1 + random.nextDouble() * (this.fixed[i] - 1);
+        }
+    }
+
+    @Benchmark
+    public void getReleaseByName(Blackhole blackhole) {
+        for (String name : this.names)
+            blackhole.consume(this.releasesList.getReleaseByName(name));
+    }
+
+    @Benchmark
+    public void getReleaseByDate(Blackhole blackhole) {
+        for (LocalDate date : this.dates)
+            blackhole.consume(this.releasesList.getReleaseByDate(date));
+    }
+
+    @Benchmark
+    public void getReleasesBetween(Blackhole blackhole) {
+        for (int i = 0; i < QUERIES; i++)
+            blackhole.consume(this.releasesList.getReleasesBetween(this.injected[i], this.fixed[i]));
+    }
+
+}
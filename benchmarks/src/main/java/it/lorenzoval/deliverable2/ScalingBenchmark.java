@@ -0,0 +1,201 @@
+package it.lorenzoval.deliverable2;
+
+import org.apache.commons.io.FileUtils;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// End to end run of buildDataset and evaluateDataset on synthetic repositories served by a local JIRA stub, at growing
+// scales of the same history. Leaves scaling.csv and a log-log plot of it, scaling.svg, in the working directory,
+// which should be a scratch one as the repositories and the outputs of the pipeline are made there:
+//   java -cp target/benchmarks.jar it.lorenzoval.deliverable2.ScalingBenchmark [scale ...]
+// Scales default to 1 10 100, and -Dplan=plan.json evaluates another plan than the two classifiers below
+public class ScalingBenchmark {
+
+    private static final Logger logger = Logger.getLogger(ScalingBenchmark.class.getName());
+    private static final String RELEASE_STRING = "release-{0}";
+    private static final long SEED = 42;
+    // History at scale 1: releases stay the same at every scale, so that the evaluation has the same folds
+    private static final int COMMITS = 300;
+    private static final int FILES = 60;
+    private static final int AUTHORS = 8;
+    private static final int RELEASES = 12;
+    private static final int BUGS = 30;
+    private static final String TOTAL = "total";
+    private static final String[] COLOURS = {"#1f77b4", "#ff7f0e", "#2ca02c", "#d62728", "#9467bd", "#8c564b",
+            "#e377c2", "#7f7f7f", "#bcbd22", "#17becf", "#000000"};
+
+    private ScalingBenchmark() {
+    }
+
+    private static EvaluationSettings settings() throws Exception {
+        EvaluationSettings settings = new EvaluationSettings();
+        String plan = System.getProperty("plan");
+        if (plan != null) {
+            settings.setPlan(EvaluationPlan.load(new File(plan)));
+        } else {
+            List<EvaluationPlan.ClassifierSpec> classifiers = new ArrayList<>();
+            classifiers.add(new EvaluationPlan.ClassifierSpec(null, "weka.classifiers.bayes.NaiveBayes",
+                    new String[0]));
+            classifiers.add(new EvaluationPlan.ClassifierSpec(null, "weka.classifiers.trees.RandomForest",
+                    new String[0]));
+            settings.setPlan(new EvaluationPlan(Collections.singletonList(EvaluationPlan.NO_SELECTION),
+                    Collections.singletonList(EvaluationPlan.NO_SAMPLING), classifiers,
+                    Collections.singletonList(new EvaluationPlan.CostSpec(null, 1.0, 10.0)),
+                    Collections.singleton(EvaluationPlan.NO_COST_SENSITIVE), 2, Integer.MAX_VALUE));
+        }
+        return settings;
+    }
+
+    // Whatever an earlier run left for this project, so that every scale starts cold
+    private static void clean(String name) {
+        File[] files = new File(".").listFiles();
+        if (files == null)
+            return;
+        for (File file : files)
+            if (file.getName().equals(name) || file.getName().startsWith(name + "_"))
+                FileUtils.deleteQuietly(file);
+    }
+
+    // Wall milliseconds of each stage of the project, and of all of them
+    private static Map<String, Long> run(JiraStub stub, int scale, EvaluationSettings settings) throws Exception {
+        String name = "synthetic" + scale;
+        clean(name);
+        int authors = AUTHORS * (int) Math.ceil(Math.sqrt(scale));
+        SyntheticRepository repository = new SyntheticRepository(name.toUpperCase(Locale.ROOT), COMMITS * scale,
+                FILES * scale, authors, RELEASES, BUGS * scale, SEED);
+        // Cloned into a directory named after the project, as GitHandler expects
+        File source = new File(name + "_source", name + ".git").getAbsoluteFile();
+        long start = System.nanoTime();
+        repository.write(source, RELEASE_STRING);
+        logger.log(Level.INFO, "Generated {0} commits, {1} files and {2} bugs in {3} ms",
+                new Object[]{repository.getCommits(), repository.getFiles(), repository.getBugs(),
+                        (System.nanoTime() - start) / 1000000});
+        stub.add(repository);
+
+        Project project = new Project(source.getPath(), name, RELEASE_STRING, 0.01, stub.getUrl());
+        start = System.nanoTime();
+        try (Instrumentation.Span span = Instrumentation.stage(project, "clone")) {
+            GitHandler.cloneOrPull(project);
+        }
+        Deliverable2.buildDataset(project);
+        try (Instrumentation.Span span = Instrumentation.stage(project, "evaluation")) {
+            WekaHandler.evaluateDataset(project, settings);
+        }
+        long total = (System.nanoTime() - start) / 1000000;
+
+        Map<String, Long> millis = new LinkedHashMap<>();
+        JSONObject stages = Instrumentation.report().getJSONObject("timers").getJSONObject("stage/" + name);
+        for (String stage : stages.keySet())
+            millis.put(stage, stages.getJSONObject(stage).getLong("wallMillis"));
+        millis.put(TOTAL, total);
+        return millis;
+    }
+
+    private static double x(double scale, double minScale, double maxScale) {
+        return maxScale == minScale ? 340 : 70 + 540 * Math.log(scale / minScale) / Math.log(maxScale / minScale);
+    }
+
+    private static double y(double millis, double minMillis, double maxMillis) {
+        return 360 - 320 * Math.log(millis / minMillis) / Math.log(maxMillis / minMillis);
+    }
+
+    // Log-log lines, one per stage: a slope of one is linear growth, steeper is worse
+    private static String plot(List<Integer> scales, Map<String, List<Long>> series) {
+        double minScale = scales.get(0);
+        double maxScale = scales.get(scales.size() - 1);
+        double minMillis = Double.MAX_VALUE;
+        double maxMillis = 1;
+        for (List<Long> values : series.values())
+            for (long value : values) {
+                minMillis = Math.min(minMillis, Math.max(1, value));
+                maxMillis = Math.max(maxMillis, value);
+            }
+        maxMillis = Math.max(maxMillis, minMillis * 10);
+        StringBuilder svg = new StringBuilder();
+        svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"800\" height=\"420\" font-family=\"sans-serif\"")
+                .append(" font-size=\"12\">\n<rect width=\"800\" height=\"420\" fill=\"white\"/>\n")
+                .append("<line x1=\"70\" y1=\"360\" x2=\"610\" y2=\"360\" stroke=\"black\"/>\n")
+                .append("<line x1=\"70\" y1=\"40\" x2=\"70\" y2=\"360\" stroke=\"black\"/>\n")
+                .append("<text x=\"340\" y=\"400\" text-anchor=\"middle\">scale</text>\n")
+                .append("<text x=\"20\" y=\"200\" transform=\"rotate(-90 20 200)\" text-anchor=\"middle\">")
+                .append("wall ms</text>\n");
+        for (int scale : scales)
+            svg.append(String.format(Locale.ROOT, "<text x=\"%.1f\" y=\"378\" text-anchor=\"middle\">%dx</text>%n",
+                    x(scale, minScale, maxScale), scale));
+        for (long decade = 1; decade <= maxMillis; decade *= 10)
+            if (decade >= minMillis)
+                svg.append(String.format(Locale.ROOT, "<text x=\"64\" y=\"%.1f\" text-anchor=\"end\">%d</text>%n",
+                        y(decade, minMillis, maxMillis) + 4, decade));
+        int colour = 0;
+        for (Map.Entry<String, List<Long>> entry : series.entrySet()) {
+            String stroke = COLOURS[colour % COLOURS.length];
+            StringBuilder points = new StringBuilder();
+            for (int i = 0; i < scales.size(); i++)
+                points.append(String.format(Locale.ROOT, "%.1f,%.1f ", x(scales.get(i), minScale, maxScale),
+                        y(Math.max(1, entry.getValue().get(i)), minMillis, maxMillis)));
+            svg.append("<polyline fill=\"none\" stroke=\"").append(stroke).append("\" stroke-width=\"2\" points=\"")
+                    .append(points.toString().trim()).append("\"/>\n");
+            svg.append(String.format(Locale.ROOT, "<text x=\"630\" y=\"%d\" fill=\"%s\">%s</text>%n",
+                    50 + 18 * colour, stroke, entry.getKey()));
+            colour++;
+        }
+        return svg.append("</svg>\n").toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Integer> scales = new ArrayList<>();
+        for (String arg : args)
+            scales.add(Integer.parseInt(arg));
+        if (scales.isEmpty())
+            Collections.addAll(scales, 1, 10, 100);
+        Collections.sort(scales);
+        EvaluationSettings settings = settings();
+
+        // Stage timings by stage, in the order of the scales
+        Map<String, List<Long>> series = new LinkedHashMap<>();
+        List<String> lines = new ArrayList<>();
+        lines.add("Scale,Commits,Files,Bugs,Stage,WallMillis");
+        try (JiraStub stub = JiraStub.start()) {
+            for (int i = 0; i < scales.size(); i++) {
+                int scale = scales.get(i);
+                for (Map.Entry<String, Long> entry : run(stub, scale, settings).entrySet()) {
+                    List<Long> values = series.computeIfAbsent(entry.getKey(), k -> new ArrayList<>());
+                    // A stage that did not run at a smaller scale took no time there
+                    while (values.size() < i)
+                        values.add(0L);
+                    values.add(entry.getValue());
+                    lines.add(scale + "," + COMMITS * scale + "," + FILES * scale + "," + BUGS * scale + "," +
+                            entry.getKey() + "," + entry.getValue());
+                }
+                FileUtils.writeLines(new File("scaling.csv"), StandardCharsets.UTF_8.name(), lines);
+            }
+        }
+        for (List<Long> values : series.values())
+            while (values.size() < scales.size())
+                values.add(0L);
+        FileUtils.writeStringToFile(new File("scaling.svg"), plot(scales, series), StandardCharsets.UTF_8);
+
+        // Growth exponent between the smallest and largest scale: 1 is linear, 2 quadratic
+        if (scales.size() > 1)
+            for (Map.Entry<String, List<Long>> entry : series.entrySet()) {
+                List<Long> values = entry.getValue();
+                double exponent = Math.log(Math.max(1, values.get(values.size() - 1)) /
+                        (double) Math.max(1, values.get(0))) / Math.log(scales.get(scales.size() - 1) /
+                        (double) scales.get(0));
+                logger.log(Level.INFO, "{0} grows as scale^{1}",
+                        new Object[]{entry.getKey(), String.format(Locale.ROOT, "%.2f", exponent)});
+            }
+        Instrumentation.writeReport(new File("scaling_report.json"));
+    }
+
+}
@@ -0,0 +1,119 @@
+package it.lorenzoval.deliverable2;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Latency of RiskScorer requests as a pre-merge hook makes them, once the dataset of a synthetic project is built and
+// its model trained: every file at the head commit, and batches of changes on top of it. Sampled, so that JMH reports
+// the p99 next to the mean. The project is cloned and built in the working directory, named after it as JIRA keys are
+// taken from project names, and removed afterwards
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScoringBenchmark {
+
+    private static final String NAME = "scoringbenchmark";
+    private static final String RELEASE_STRING = "release-{0}";
+    private static final long SEED = 42;
+    private static final int FILES_PER_CHANGE = 5;
+    @Param({"weka.classifiers.bayes.NaiveBayes", "weka.classifiers.trees.RandomForest", "weka.classifiers.lazy.IBk"})
+    public String classifier;
+    // Changes per request
+    @Param({"1", "20"})
+    public int batch;
+    private File directory;
+    private RiskScorer scorer;
+    private String head;
+    private List<RiskScorer.Change> changes;
+
+    private static void clean() {
+        File[] files = new File(".").listFiles();
+        if (files != null)
+            for (File file : files)
+                if (file.getName().equals(NAME) || file.getName().startsWith(NAME + "_"))
+                    FileUtils.deleteQuietly(file);
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.directory = Files.createTempDirectory("scoring-benchmark").toFile();
+        SyntheticRepository repository = new SyntheticRepository(NAME.toUpperCase(Locale.ROOT), 3000, 600, 24, 12,
+                300, SEED);
+        File source = new File(this.directory, NAME + ".git");
+        repository.write(source, RELEASE_STRING);
+        clean();
+        try (JiraStub stub = JiraStub.start()) {
+            stub.add(repository);
+            Project project = new Project(source.getPath(), NAME, RELEASE_STRING, 0.01, stub.getUrl());
+            GitHandler.cloneOrPull(project);
+            String datasetKey = Deliverable2.buildDataset(project);
+            List<EvaluationPlan.ClassifierSpec> classifiers = Collections.singletonList(
+                    new EvaluationPlan.ClassifierSpec(null, this.classifier, new String[0]));
+            EvaluationPlan plan = new EvaluationPlan(Collections.singletonList(EvaluationPlan.NO_SELECTION),
+                    Collections.singletonList(EvaluationPlan.NO_SAMPLING), classifiers,
+                    Collections.singletonList(new EvaluationPlan.CostSpec(null, 1.0, 10.0)),
+                    Collections.singleton(EvaluationPlan.NO_COST_SENSITIVE), 2, Integer.MAX_VALUE);
+            this.scorer = RiskScorer.forProject(project, datasetKey, plan);
+            this.head = GitHandler.resolve(project, "HEAD");
+        }
+
+        // Changes to files that exist at the head, plus a new one each
+        List<RiskScorer.Score> files = this.scorer.scoreRevision(this.head);
+        Random random = new Random(SEED);
+        this.changes = new ArrayList<>();
+        for (int c = 0; c < this.batch; c++) {
+            List<String> paths = new ArrayList<>();
+            int[] added = new int[FILES_PER_CHANGE];
+            int[] deleted = new int[FILES_PER_CHANGE];
+            for (int i = 0; i < FILES_PER_CHANGE; i++) {
+                paths.add(i == 0 ? "src/main/java/org/synthetic/New" + c + ".java" :
+                        files.get(random.nextInt(files.size())).getFile());
+                added[i] = 1 + random.nextInt(50);
+                deleted[i] = i == 0 ? 0 : random.nextInt(10);
+            }
+            this.changes.add(new RiskScorer.Change("author" + random.nextInt(24), paths, added, deleted));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(this.directory);
+        clean();
+    }
+
+    @Benchmark
+    public List<RiskScorer.Score> revision() throws Exception {
+        return this.scorer.scoreRevision(this.head);
+    }
+
+    @Benchmark
+    public List<List<RiskScorer.Score>> changes() throws Exception {
+        return this.scorer.scoreChanges(this.head, this.changes);
+    }
+
+}
@@ -0,0 +1,139 @@
+package it.lorenzoval.deliverable2;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+// Seeded project history for the benchmarks: releases a month apart, each shipping every file and an even share of
+// the commits, one commit in ten fixing one of the bugs
+final class SyntheticHistory {
+
+    private static final LocalDate START = LocalDate.of(2010, 1, 1);
+    private static final int FILES_PER_COMMIT = 4;
+    private static final int AUTHORS = 20;
+
+    private SyntheticHistory() {
+    }
+
+    static String fileName(int i) {
+        return "src/main/java/org/example/p" + (i % 50) + "/File" + i + ".java";
+    }
+
+    static String issueKey(int i) {
+        return "SYN-" + (i + 1);
+    }
+
+    static String releaseName(int i) {
+        return "1." + i + ".0";
+    }
+
+    private static String hash(int commit) {
+        return String.format("%040x", commit);
+    }
+
+    private static Set<String> issueKeys(int commit, int bugs) {
+        return commit % 10 == 0 && bugs > 0 ? Collections.singleton(issueKey(commit / 10 % bugs)) :
+                Collections.emptySet();
+    }
+
+    // What git log prints for GitHandler.readMissingCommits: a NUL separated header, then a numstat line per file
+    static String numstatLog(int commits, int files, int bugs, long seed) {
+        Random random = new Random(seed);
+        StringBuilder log = new StringBuilder();
+        for (int c = 0; c < commits; c++) {
+            Set<String> keys = issueKeys(c, bugs);
+            log.append('\0').append(hash(c)).append('\0').append("Author ").append(c % AUTHORS).append('\0')
+                    .append(keys.isEmpty() ? "Refactor" : keys.iterator().next() + " Fix").append(" things\n\n");
+            for (int f = 0; f < FILES_PER_COMMIT; f++)
+                log.append(random.nextInt(100)).append('\t').append(random.nextInt(50)).append('\t')
+                        .append(fileName(random.nextInt(files))).append('\n');
+            // Changed along with the sources, and counted in the change set size
+            log.append("-\t-\tdocs/diagram").append(c % 7).append(".png\n\n");
+        }
+        return log.toString();
+    }
+
+    // Releases filled with files and commits as after the commits stage, half of them main and half dropped
+    static ReleasesList releases(int releases, int files, int commits, int bugs, long seed) {
+        Random random = new Random(seed);
+        List<Release> list = new ArrayList<>();
+        for (int i = 0; i < releases; i++)
+            list.add(new Release(releaseName(i + 1), START.plusMonths(i), START.plusMonths(i).plusDays(1)));
+        ReleasesList releasesList = new ReleasesList(list);
+        List<Release> all = new ArrayList<>(releasesList.getMain());
+        all.addAll(releasesList.getDropped());
+        for (int i = 0; i < all.size(); i++)
+            for (int f = 0; f < files; f++) {
+                if (i < releasesList.getMain().size())
+                    all.get(i).addFile(fileName(f), 100 + f % 900, START.minusDays(f % 365));
+                else
+                    all.get(i).addFile(fileName(f));
+            }
+        for (int c = 0; c < commits; c++) {
+            int index = (int) ((long) c * all.size() / commits);
+            Release release = all.get(index);
+            List<String> commitFiles = new ArrayList<>();
+            for (int f = 0; f < FILES_PER_COMMIT; f++) {
+                String file = fileName(random.nextInt(files));
+                commitFiles.add(file);
+                // Dropped releases only keep their commits, as in GitHandler.getCommits
+                if (index < releasesList.getMain().size())
+                    release.updateMetrics(file, "Author " + c % AUTHORS, FILES_PER_COMMIT - 1, random.nextInt(100),
+                            random.nextInt(50));
+            }
+            release.addCommit(new Commit(hash(c), "Author " + c % AUTHORS, issueKeys(c, bugs), commitFiles));
+        }
+        return releasesList;
+    }
+
+    // Marks about the given share of the files of each main release as buggy, larger files more likely so, as after
+    // the labels stage
+    static void setBuggyFiles(ReleasesList releasesList, int files, int buggyPercent, long seed) {
+        Random random = new Random(seed);
+        for (Release release : releasesList.getMain())
+            for (int f = 0; f < files; f++)
+                if (random.nextDouble() * 100 < buggyPercent * 2.0 * (f % 900) / 900)
+                    release.setBuggy(fileName(f));
+    }
+
+    // Bugs as fetched from JIRA, not yet linked to their commits
+    static List<Issue> fetchedBugs(ReleasesList releasesList, int bugs, long seed) {
+        Random random = new Random(seed);
+        List<Release> main = releasesList.getMain();
+        List<Issue> issues = new ArrayList<>();
+        for (int i = 0; i < bugs; i++) {
+            Release opening = main.get(random.nextInt(main.size()));
+            issues.add(new Issue(issueKey(i), opening, OffsetDateTime.of(opening.getJiraReleaseDate()
+                    .plusDays(random.nextInt(60)).atStartOfDay(), ZoneOffset.UTC)));
+        }
+        return issues;
+    }
+
+    // Bugs as after linking: fixed in a release after their opening one, half of them declaring affected versions
+    // and half left to proportion
+    static List<Issue> linkedBugs(ReleasesList releasesList, List<Issue> proportionList, int bugs, long seed) {
+        Random random = new Random(seed);
+        List<Release> main = releasesList.getMain();
+        List<Issue> issues = new ArrayList<>();
+        for (Issue bug : fetchedBugs(releasesList, bugs, seed)) {
+            int opening = bug.getOpeningVersion().getId() - 1;
+            int fixed = Math.min(main.size() - 1, opening + random.nextInt(3));
+            bug.setFixedVersion(main.get(fixed));
+            for (int f = 0; f < FILES_PER_COMMIT; f++)
+                bug.addAffectedFile(fileName(random.nextInt(main.get(0).getFiles().size())));
+            if (random.nextBoolean() && opening > 0) {
+                int injected = random.nextInt(opening);
+                bug.addAffectedVersions(main.subList(injected, fixed));
+                proportionList.add(bug);
+            }
+            issues.add(bug);
+        }
+        return issues;
+    }
+
+}
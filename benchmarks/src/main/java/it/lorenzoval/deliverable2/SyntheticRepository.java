@@ -0,0 +1,290 @@
+package it.lorenzoval.deliverable2;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+// Seeded git repository together with the JIRA project that goes with it: releases a month apart tagged after the
+// release string of the project, Java files growing over time and bugs fixed by commits mentioning their key
+final class SyntheticRepository {
+
+    private static final Instant START = LocalDate.of(2015, 1, 1).atStartOfDay().toInstant(ZoneOffset.UTC);
+    private static final long DAY = 24L * 60 * 60;
+    private static final long RELEASE_PERIOD = 30 * DAY;
+    private static final DateTimeFormatter JIRA_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+    // Files existing in the first commit, the others are added until this share of the history
+    private static final int INITIAL_FILES_PERCENT = 20;
+    private static final int GROWTH_PERCENT = 70;
+    private final String key;
+    private final int commits;
+    private final int files;
+    private final int authors;
+    private final int releases;
+    private final int bugs;
+    private final long seed;
+    private final List<Bug> fixedBugs = new ArrayList<>();
+
+    SyntheticRepository(String key, int commits, int files, int authors, int releases, int bugs, long seed) {
+        if (commits < releases || files < 1 || authors < 1 || releases < 1 || bugs < 0)
+            throw new IllegalArgumentException("Need at least a commit per release and a file and an author");
+        this.key = key;
+        this.commits = commits;
+        this.files = files;
+        this.authors = authors;
+        this.releases = releases;
+        this.bugs = bugs;
+        this.seed = seed;
+    }
+
+    String getKey() {
+        return this.key;
+    }
+
+    int getCommits() {
+        return this.commits;
+    }
+
+    int getFiles() {
+        return this.files;
+    }
+
+    int getBugs() {
+        return this.bugs;
+    }
+
+    static String releaseName(int i) {
+        return "1." + i + ".0";
+    }
+
+    private static String fileName(int i) {
+        return "src/main/java/org/synthetic/p" + (i % 20) + "/File" + i + ".java";
+    }
+
+    private long commitTime(int c) {
+        return START.getEpochSecond() + c * (this.releases * RELEASE_PERIOD) / this.commits;
+    }
+
+    private static long releaseTime(int r) {
+        return START.getEpochSecond() + r * RELEASE_PERIOD;
+    }
+
+    // Release, from 1, whose period the given time falls in
+    private static int releaseAt(long time) {
+        return (int) ((time - START.getEpochSecond()) / RELEASE_PERIOD) + 1;
+    }
+
+    private int birth(int file) {
+        int initial = Math.max(1, this.files * INITIAL_FILES_PERCENT / 100);
+        if (file < initial)
+            return 0;
+        return 1 + (int) ((long) (file - initial) * (this.commits * GROWTH_PERCENT / 100) / (this.files - initial));
+    }
+
+    // The line changed by the last commit holds its number, so that a change shows in numstat as a line removed and
+    // one added besides the ones appended
+    private static byte[] content(int file, int lines, int touched, int stamp) {
+        StringBuilder content = new StringBuilder();
+        content.append("package org.synthetic.p").append(file % 20).append(";\n\npublic class File").append(file)
+                .append(" {\n\n");
+        for (int i = 0; i < lines; i++)
+            content.append("    int f").append(i).append(" = ").append(i == touched ? stamp : i).append(";\n");
+        return content.append("\n}\n").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void data(OutputStream out, byte[] data) throws IOException {
+        out.write(("data " + data.length + "\n").getBytes(StandardCharsets.UTF_8));
+        out.write(data);
+        out.write('\n');
+    }
+
+    private static void line(OutputStream out, String line) throws IOException {
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void git(File directory, String... command) throws IOException, InterruptedException {
+        List<String> arguments = new ArrayList<>();
+        arguments.add("git");
+        Collections.addAll(arguments, command);
+        ProcessBuilder pb = new ProcessBuilder(arguments);
+        pb.directory(directory);
+        pb.inheritIO();
+        if (pb.start().waitFor() != 0)
+            throw new IOException("Failed " + arguments + " in " + directory);
+    }
+
+    // Bare repository at directory, which must not exist yet, streamed to git fast-import so that even the largest
+    // scales take seconds
+    void write(File directory, String releaseString) throws IOException, InterruptedException {
+        if (!directory.mkdirs())
+            throw new IOException("Cannot create " + directory);
+        git(directory, "init", "--quiet", "--bare");
+        ProcessBuilder pb = new ProcessBuilder("git", "fast-import", "--quiet");
+        pb.directory(directory);
+        pb.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process process = pb.start();
+        try (OutputStream out = new BufferedOutputStream(process.getOutputStream(), 1 << 16)) {
+            writeHistory(out, releaseString);
+        }
+        if (process.waitFor() != 0)
+            throw new IOException("git fast-import failed in " + directory);
+        git(directory, "symbolic-ref", "HEAD", "refs/heads/master");
+    }
+
+    private void writeHistory(OutputStream out, String releaseString) throws IOException {
+        Random random = new Random(this.seed);
+        int[] lines = new int[this.files];
+        int[] touched = new int[this.files];
+        int[] stamp = new int[this.files];
+        int created = 0;
+        // Bugs by opening time, opened ones waiting for a commit to fix them
+        long[] opened = new long[this.bugs];
+        long span = this.releases * RELEASE_PERIOD * 9 / 10;
+        for (int b = 0; b < this.bugs; b++)
+            opened[b] = START.getEpochSecond() + (long) (random.nextDouble() * span);
+        Arrays.sort(opened);
+        List<Integer> open = new ArrayList<>();
+        int nextBug = 0;
+        double fixRate = Math.min(1.0, 1.5 * this.bugs / this.commits);
+        int release = 1;
+        this.fixedBugs.clear();
+
+        for (int c = 0; c < this.commits; c++) {
+            long time = commitTime(c);
+            // Tags go on the last commit before the end of their period
+            while (release <= this.releases && time >= releaseTime(release)) {
+                line(out, "reset refs/tags/" + MessageFormat.format(releaseString, releaseName(release)));
+                line(out, "from :" + c);
+                line(out, "");
+                release++;
+            }
+            while (nextBug < this.bugs && opened[nextBug] < time - DAY)
+                open.add(nextBug++);
+            String subject = "Change " + c;
+            if (!open.isEmpty() && random.nextDouble() < fixRate) {
+                int bug = open.remove(random.nextInt(open.size()));
+                Bug fixed = new Bug(this.key + "-" + (bug + 1), opened[bug], time + 60 * 60);
+                // Half of the bugs declare their affected versions, the others are left to proportion
+                int opening = releaseAt(opened[bug]);
+                if (random.nextBoolean())
+                    for (int r = Math.max(1, opening - random.nextInt(3)); r <= opening; r++)
+                        fixed.versions.add(releaseName(r));
+                this.fixedBugs.add(fixed);
+                subject = fixed.key + " Fix issue found in " + releaseName(opening);
+            }
+            int author = (int) Math.abs(random.nextGaussian() * this.authors / 3) % this.authors;
+            String signature = "Developer " + author + " <dev" + author + "@example.org> " + time + " +0000";
+            line(out, "commit refs/heads/master");
+            line(out, "mark :" + (c + 1));
+            line(out, "author " + signature);
+            line(out, "committer " + signature);
+            data(out, (subject + "\n").getBytes(StandardCharsets.UTF_8));
+            if (c > 0)
+                line(out, "from :" + c);
+            else
+                file(out, "README.md", ("Synthetic project " + this.key + "\n").getBytes(StandardCharsets.UTF_8));
+            for (; created < this.files && birth(created) <= c; created++) {
+                lines[created] = 10 + random.nextInt(90);
+                touched[created] = -1;
+                file(out, fileName(created), content(created, lines[created], -1, 0));
+            }
+            int changes = c == 0 ? 0 : 1 + random.nextInt(3);
+            for (int i = 0; i < changes; i++) {
+                int file = random.nextInt(created);
+                lines[file] = Math.max(5, lines[file] + random.nextInt(12) - 3);
+                touched[file] = random.nextInt(lines[file]);
+                stamp[file] = c;
+                file(out, fileName(file), content(file, lines[file], touched[file], stamp[file]));
+            }
+            line(out, "");
+        }
+        for (; release <= this.releases; release++) {
+            line(out, "reset refs/tags/" + MessageFormat.format(releaseString, releaseName(release)));
+            line(out, "from :" + this.commits);
+            line(out, "");
+        }
+    }
+
+    private static void file(OutputStream out, String path, byte[] content) throws IOException {
+        line(out, "M 100644 inline " + path);
+        data(out, content);
+    }
+
+    private static String jiraDate(long time) {
+        return OffsetDateTime.ofInstant(Instant.ofEpochSecond(time), ZoneOffset.UTC).format(JIRA_FORMATTER);
+    }
+
+    // What JIRA answers to rest/api/2/project/KEY, with a version still to be released as real projects have
+    JSONObject projectJson() {
+        JSONArray versions = new JSONArray();
+        for (int r = 1; r <= this.releases; r++) {
+            JSONObject version = new JSONObject();
+            version.put("name", releaseName(r));
+            version.put("released", true);
+            version.put("releaseDate", LocalDate.ofEpochDay(releaseTime(r) / DAY).toString());
+            versions.put(version);
+        }
+        JSONObject unreleased = new JSONObject();
+        unreleased.put("name", releaseName(this.releases + 1));
+        unreleased.put("released", false);
+        versions.put(unreleased);
+        JSONObject project = new JSONObject();
+        project.put("key", this.key);
+        project.put("versions", versions);
+        return project;
+    }
+
+    // What JIRA answers to the search for fixed bugs, a page at a time; known only once the history is written
+    JSONObject searchJson(int startAt, int maxResults) {
+        JSONArray issues = new JSONArray();
+        for (int i = startAt; i < this.fixedBugs.size() && i < startAt + maxResults; i++) {
+            Bug bug = this.fixedBugs.get(i);
+            JSONObject fields = new JSONObject();
+            fields.put("created", jiraDate(bug.created));
+            fields.put("resolutiondate", jiraDate(bug.resolved));
+            JSONArray versions = new JSONArray();
+            for (String version : bug.versions)
+                versions.put(new JSONObject().put("name", version));
+            fields.put("versions", versions);
+            issues.put(new JSONObject().put("key", bug.key).put("fields", fields));
+        }
+        JSONObject search = new JSONObject();
+        search.put("startAt", startAt);
+        search.put("maxResults", maxResults);
+        search.put("total", this.fixedBugs.size());
+        search.put("issues", issues);
+        return search;
+    }
+
+    private static class Bug {
+
+        private final String key;
+        private final long created;
+        private final long resolved;
+        private final List<String> versions = new ArrayList<>();
+
+        private Bug(String key, long created, long resolved) {
+            this.key = key;
+            this.created = created;
+            this.resolved = resolved;
+        }
+
+    }
+
+}
@@ -0,0 +1,156 @@
+package it.lorenzoval.deliverable2;
+
+import org.apache.commons.io.FileUtils;
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.CostMatrix;
+import weka.classifiers.bayes.NaiveBayes;
+import weka.classifiers.evaluation.Evaluation;
+import weka.classifiers.evaluation.NominalPrediction;
+import weka.classifiers.evaluation.Prediction;
+import weka.classifiers.lazy.IBk;
+import weka.classifiers.meta.CostSensitiveClassifier;
+import weka.core.Instances;
+import weka.core.converters.CSVLoader;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Runs the code paths the evaluation re-implements next to the Weka ones they stand for, on the last fold of a
+// generated metrics dataset, and fails unless every distribution and every metric written to the results is the same:
+//   - NeighbourVoting against IBk, and against IBk inside CostSensitiveClassifier for cost sensitive learning
+//   - Predictions.minimizeExpectedCost against CostSensitiveClassifier minimizing the expected cost
+// mvn verify runs it before the smoke grid:
+//   java -cp target/benchmarks.jar it.lorenzoval.deliverable2.WekaEquivalenceCheck
+public class WekaEquivalenceCheck {
+
+    private static final Logger logger = Logger.getLogger(WekaEquivalenceCheck.class.getName());
+    private static final long SEED = 42;
+    private static final int RELEASES = 20;
+    private static final int FILES = 220;
+    private static final int BUGGY_PERCENT = 20;
+    private static final int[] NEIGHBOURS = {1, 5};
+    private static final List<EvaluationPlan.CostSpec> COSTS = Arrays.asList(
+            new EvaluationPlan.CostSpec("10", 1.0, 10.0), new EvaluationPlan.CostSpec("5", 1.0, 5.0));
+    private static final int CLASS_INDEX = 0;
+
+    private WekaEquivalenceCheck() {
+    }
+
+    private static Instances[] generateFold(File directory) throws Exception {
+        Project project = new Project("", new File(directory, "check").getPath(), "release-{0}", 0.01);
+        ReleasesList releasesList = SyntheticHistory.releases(RELEASES, FILES, RELEASES * FILES, 0, SEED);
+        SyntheticHistory.setBuggyFiles(releasesList, FILES, BUGGY_PERCENT, SEED);
+        Deliverable2.writeDatasetToCSV(project, releasesList.getMain());
+        // Loaded as WekaHandler does
+        CSVLoader loader = new CSVLoader();
+        loader.setSource(Deliverable2.metricsFileFor(project));
+        loader.setNominalLabelSpecs(new Object[]{"Buggy:Yes,No"});
+        Instances dataset = loader.getDataSet();
+        dataset.setClassIndex(dataset.numAttributes() - 1);
+        WalkForwardFolds folds = new WalkForwardFolds(dataset);
+        int release = folds.getNumReleases();
+        return new Instances[]{folds.getTrainingCopy(release), folds.getTestingSet(release)};
+    }
+
+    // Weka's own evaluation of the model, whose recorded predictions carry the distributions
+    private static Evaluation evaluateWithWeka(Classifier classifier, Instances trainingSet, Instances testingSet)
+            throws Exception {
+        classifier.buildClassifier(trainingSet);
+        Evaluation evaluation = new Evaluation(trainingSet);
+        evaluation.evaluateModel(classifier, testingSet);
+        return evaluation;
+    }
+
+    private static void compare(String name, Evaluation weka, Predictions ours, List<String> failures)
+            throws Exception {
+        List<Prediction> predictions = weka.predictions();
+        for (int i = 0; i < predictions.size(); i++) {
+            double[] expected = ((NominalPrediction) predictions.get(i)).distribution();
+            if (!Arrays.equals(expected, ours.getDistribution(i))) {
+                failures.add(name + ": instance " + i + " has distribution " + Arrays.toString(ours.getDistribution(i))
+                        + " instead of " + Arrays.toString(expected));
+                return;
+            }
+        }
+        // The metrics evaluateResults writes
+        Evaluation evaluation = ours.evaluate();
+        double[] expected = {weka.numTruePositives(CLASS_INDEX), weka.numFalsePositives(CLASS_INDEX),
+                weka.numTrueNegatives(CLASS_INDEX), weka.numFalseNegatives(CLASS_INDEX), weka.precision(CLASS_INDEX),
+                weka.recall(CLASS_INDEX), weka.areaUnderROC(CLASS_INDEX), weka.kappa()};
+        double[] actual = {evaluation.numTruePositives(CLASS_INDEX), evaluation.numFalsePositives(CLASS_INDEX),
+                evaluation.numTrueNegatives(CLASS_INDEX), evaluation.numFalseNegatives(CLASS_INDEX),
+                evaluation.precision(CLASS_INDEX), evaluation.recall(CLASS_INDEX),
+                evaluation.areaUnderROC(CLASS_INDEX), evaluation.kappa()};
+        if (!Arrays.equals(expected, actual))
+            failures.add(name + ": metrics " + Arrays.toString(actual) + " instead of " + Arrays.toString(expected));
+        else
+            logger.log(Level.INFO, "{0}: same {1} distributions and metrics", new Object[]{name, predictions.size()});
+    }
+
+    private static IBk newIBk(EvaluationSettings.NeighbourSearch search, int neighbours) {
+        IBk ibk = new IBk(neighbours);
+        ibk.setNearestNeighbourSearchAlgorithm(search.create());
+        return ibk;
+    }
+
+    private static CostSensitiveClassifier costSensitive(Classifier classifier, CostMatrix costMatrix,
+                                                         boolean minimizeExpectedCost) {
+        CostSensitiveClassifier costSensitiveClassifier = new CostSensitiveClassifier();
+        costSensitiveClassifier.setClassifier(classifier);
+        costSensitiveClassifier.setCostMatrix(costMatrix);
+        costSensitiveClassifier.setMinimizeExpectedCost(minimizeExpectedCost);
+        return costSensitiveClassifier;
+    }
+
+    private static void checkNeighbourVoting(Instances trainingSet, Instances testingSet, List<String> failures)
+            throws Exception {
+        for (EvaluationSettings.NeighbourSearch search : EvaluationSettings.NeighbourSearch.values())
+            for (int neighbours : NEIGHBOURS)
+                for (EvaluationPlan.CostSpec costSpec : COSTS) {
+                    String name = "IBk -K " + neighbours + " " + search + " cost " + costSpec.getName();
+                    IBk model = newIBk(search, neighbours);
+                    model.buildClassifier(trainingSet);
+                    CellResult voted = NeighbourVoting.predict(model, trainingSet, testingSet, costSpec.create());
+                    compare(name, evaluateWithWeka(newIBk(search, neighbours), trainingSet, testingSet),
+                            Predictions.of(testingSet, voted.getBaseDistributions()), failures);
+                    compare(name + " sensitive learning", evaluateWithWeka(costSensitive(newIBk(search,
+                            neighbours), costSpec.create(), false), trainingSet, testingSet),
+                            Predictions.of(testingSet, voted.getLearningDistributions()), failures);
+                }
+    }
+
+    private static void checkMinimizeExpectedCost(Instances trainingSet, Instances testingSet, List<String> failures)
+            throws Exception {
+        for (Classifier classifier : new Classifier[]{new NaiveBayes(), new IBk()})
+            for (EvaluationPlan.CostSpec costSpec : COSTS) {
+                String name = classifier.getClass().getSimpleName() + " cost " + costSpec.getName()
+                        + " sensitive threshold";
+                Classifier model = AbstractClassifier.makeCopy(classifier);
+                model.buildClassifier(trainingSet);
+                Predictions ours = Predictions.of(model, testingSet).minimizeExpectedCost(costSpec.create());
+                compare(name, evaluateWithWeka(costSensitive(AbstractClassifier.makeCopy(classifier),
+                        costSpec.create(), true), trainingSet, testingSet), ours, failures);
+            }
+    }
+
+    public static void main(String[] args) throws Exception {
+        File directory = Files.createTempDirectory("weka-equivalence-check").toFile();
+        List<String> failures = new ArrayList<>();
+        try {
+            Instances[] fold = generateFold(directory);
+            checkNeighbourVoting(fold[0], fold[1], failures);
+            checkMinimizeExpectedCost(fold[0], fold[1], failures);
+        } finally {
+            FileUtils.deleteDirectory(directory);
+        }
+        if (!failures.isEmpty())
+            throw new IllegalStateException("Different from Weka:\n" + String.join("\n", failures));
+    }
+
+}
@@ -1,10 +0,0 @@
-package it.lorenzoval.deliverable2;
-
-public class Bookkeeper extends Project {
-
-    public Bookkeeper() {
-        super("https://github.com/apache/bookkeeper", "bookkeeper",
-                "release-{0}", 0.02);
-    }
-
-}
@@ -0,0 +1,22 @@
+package it.lorenzoval.deliverable2;
+
+public class CellResult implements DiskCache.Immutable {
+
+    private static final long serialVersionUID = 1L;
+    private final double[][] baseDistributions;
+    private final double[][] learningDistributions;
+
+    public CellResult(double[][] baseDistributions, double[][] learningDistributions) {
+        this.baseDistributions = baseDistributions;
+        this.learningDistributions = learningDistributions;
+    }
+
+    public double[][] getBaseDistributions() {
+        return this.baseDistributions;
+    }
+
+    public double[][] getLearningDistributions() {
+        return this.learningDistributions;
+    }
+
+}
@@ -0,0 +1,79 @@
+package it.lorenzoval.deliverable2;
+
+import weka.classifiers.CostMatrix;
+
+import java.io.Serializable;
+
+// Everything a worker needs to train a cell of a fold on its own copy of the dataset
+public class CellTask implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private final int release;
+    private final String featureSelection;
+    private final int[] selected;
+    private final String balancing;
+    private final double percentage;
+    private final String classifierClass;
+    private final String[] classifierOptions;
+    private final CostMatrix costMatrix;
+    private final boolean base;
+    private final boolean learning;
+
+    public CellTask(int release, String featureSelection, int[] selected, String balancing, double percentage,
+                    String classifierClass, String[] classifierOptions, CostMatrix costMatrix, boolean base,
+                    boolean learning) {
+        this.release = release;
+        this.featureSelection = featureSelection;
+        this.selected = selected;
+        this.balancing = balancing;
+        this.percentage = percentage;
+        this.classifierClass = classifierClass;
+        this.classifierOptions = classifierOptions;
+        this.costMatrix = costMatrix;
+        this.base = base;
+        this.learning = learning;
+    }
+
+    public int getRelease() {
+        return this.release;
+    }
+
+    public String getFeatureSelection() {
+        return this.featureSelection;
+    }
+
+    // Null when no feature selection is applied
+    public int[] getSelected() {
+        return this.selected;
+    }
+
+    public String getBalancing() {
+        return this.balancing;
+    }
+
+    public double getPercentage() {
+        return this.percentage;
+    }
+
+    public String getClassifierClass() {
+        return this.classifierClass;
+    }
+
+    public String[] getClassifierOptions() {
+        return this.classifierOptions.clone();
+    }
+
+    public CostMatrix getCostMatrix() {
+        return this.costMatrix;
+    }
+
+    // False when another task of the fold trains the same base model, only its cost sensitive learning is left
+    public boolean isBase() {
+        return this.base;
+    }
+
+    public boolean isLearning() {
+        return this.learning;
+    }
+
+}
@@ -1,18 +1,22 @@
 package it.lorenzoval.deliverable2;
 
+import java.io.Serializable;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 
-public class Commit {
+public class Commit implements Serializable {
 
+    private static final long serialVersionUID = 1L;
     private final String hash;
     private final String author;
-    private final String subject;
+    private final Set<String> issueKeys;
     private final List<String> files;
 
-    public Commit(String hash, String author, String subject, List<String> files) {
+    public Commit(String hash, String author, Set<String> issueKeys, List<String> files) {
         this.hash = hash;
         this.author = author;
-        this.subject = subject;
+        this.issueKeys = issueKeys;
         this.files = files;
     }
 
@@ -24,8 +28,12 @@ public class Commit {
         return this.author;
     }
 
-    public String getSubject() {
-        return this.subject;
+    public Set<String> getIssueKeys() {
+        return this.issueKeys;
+    }
+
+    public boolean mentions(String issueKey) {
+        return this.issueKeys.contains(issueKey.toUpperCase(Locale.ROOT));
     }
 
     public List<String> getFiles() {
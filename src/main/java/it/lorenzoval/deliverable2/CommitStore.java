@@ -0,0 +1,251 @@
+package it.lorenzoval.deliverable2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// What git says about a commit never changes, so it is read once and appended here, keyed by hash. Paths are
+// stored once each and referred to by their position.
+public class CommitStore implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(CommitStore.class.getName());
+    private static final Pattern ISSUE_KEY = Pattern.compile("\\b[A-Za-z][A-Za-z0-9_]*-\\d+\\b");
+    private static final byte PATH = 'P';
+    private static final byte COMMIT = 'C';
+    private final Map<String, Entry> commits;
+    private final List<String> paths;
+    private final Map<String, Integer> pathIds;
+    private final DataOutputStream out;
+
+    private CommitStore(Map<String, Entry> commits, List<String> paths, File file) throws IOException {
+        this.commits = commits;
+        this.paths = paths;
+        this.pathIds = new HashMap<>();
+        for (int i = 0; i < paths.size(); i++)
+            this.pathIds.put(paths.get(i), i);
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+    }
+
+    public static File forProject(Project project) {
+        return new File(project.getProjectName() + "_commits.store");
+    }
+
+    public static CommitStore open(Project project) throws IOException {
+        return open(forProject(project));
+    }
+
+    public static CommitStore open(File file) throws IOException {
+        Map<String, Entry> commits = new HashMap<>();
+        List<String> paths = new ArrayList<>();
+        long valid = 0;
+        if (file.isFile()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                long position = 0;
+                while (true) {
+                    int size = in.readInt();
+                    byte type = in.readByte();
+                    if (type == PATH) {
+                        paths.add(in.readUTF());
+                    } else if (type == COMMIT) {
+                        Entry entry = Entry.read(in);
+                        commits.put(entry.hash, entry);
+                    } else {
+                        throw new UTFDataFormatException("Unknown record type " + type);
+                    }
+                    position += Integer.BYTES + size;
+                    valid = position;
+                }
+            } catch (EOFException | UTFDataFormatException e) {
+                // A crash while appending leaves at most the last record torn, it is read from git again
+                logger.log(Level.FINE, "Commit store ends at {0}", valid);
+            }
+            if (valid < file.length()) {
+                try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                    channel.truncate(valid);
+                }
+            }
+        }
+        logger.log(Level.INFO, "{0} commits already known in {1}", new Object[]{commits.size(), file.getName()});
+        return new CommitStore(commits, paths, file);
+    }
+
+    // Issue keys mentioned by a commit subject, upper case
+    public static Set<String> issueKeys(String subject) {
+        Set<String> keys = new LinkedHashSet<>();
+        Matcher m = ISSUE_KEY.matcher(subject);
+        while (m.find())
+            keys.add(m.group().toUpperCase(Locale.ROOT));
+        return keys;
+    }
+
+    public boolean contains(String hash) {
+        return this.commits.containsKey(hash);
+    }
+
+    public Entry get(String hash) {
+        return this.commits.get(hash);
+    }
+
+    public String getPath(int id) {
+        return this.paths.get(id);
+    }
+
+    // Records are length prefixed, so that a torn one is told apart from a complete one
+    private void append(Record record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream dataOut = new DataOutputStream(bytes)) {
+            record.write(dataOut);
+        }
+        this.out.writeInt(bytes.size());
+        bytes.writeTo(this.out);
+    }
+
+    private int pathId(String path) throws IOException {
+        Integer id = this.pathIds.get(path);
+        if (id == null) {
+            id = this.paths.size();
+            this.paths.add(path);
+            this.pathIds.put(path, id);
+            append(dataOut -> {
+                dataOut.writeByte(PATH);
+                dataOut.writeUTF(path);
+            });
+        }
+        return id;
+    }
+
+    // Added and deleted lines are -1 for binary files
+    public Entry add(String hash, String author, String subject, List<String> files, int[] added, int[] deleted)
+            throws IOException {
+        int[] fileIds = new int[files.size()];
+        for (int i = 0; i < fileIds.length; i++)
+            fileIds[i] = pathId(files.get(i));
+        Entry entry = new Entry(hash, author, issueKeys(subject), fileIds, added, deleted);
+        append(dataOut -> {
+            dataOut.writeByte(COMMIT);
+            entry.write(dataOut);
+        });
+        this.commits.put(hash, entry);
+        return entry;
+    }
+
+    public void flush() throws IOException {
+        this.out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.out.close();
+    }
+
+    private interface Record {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    public static class Entry {
+
+        private final String hash;
+        private final String author;
+        private final Set<String> issueKeys;
+        private final int[] fileIds;
+        private final int[] added;
+        private final int[] deleted;
+
+        private Entry(String hash, String author, Set<String> issueKeys, int[] fileIds, int[] added,
+                      int[] deleted) {
+            this.hash = hash;
+            this.author = author;
+            this.issueKeys = issueKeys;
+            this.fileIds = fileIds;
+            this.added = added;
+            this.deleted = deleted;
+        }
+
+        private static Entry read(DataInputStream in) throws IOException {
+            String hash = in.readUTF();
+            String author = in.readUTF();
+            int numKeys = in.readInt();
+            Set<String> issueKeys = numKeys == 0 ? Collections.emptySet() : new LinkedHashSet<>();
+            for (int i = 0; i < numKeys; i++)
+                issueKeys.add(in.readUTF());
+            int numFiles = in.readInt();
+            int[] fileIds = new int[numFiles];
+            int[] added = new int[numFiles];
+            int[] deleted = new int[numFiles];
+            for (int i = 0; i < numFiles; i++) {
+                fileIds[i] = in.readInt();
+                added[i] = in.readInt();
+                deleted[i] = in.readInt();
+            }
+            return new Entry(hash, author, issueKeys, fileIds, added, deleted);
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeUTF(this.hash);
+            out.writeUTF(this.author);
+            out.writeInt(this.issueKeys.size());
+            for (String key : this.issueKeys)
+                out.writeUTF(key);
+            out.writeInt(this.fileIds.length);
+            for (int i = 0; i < this.fileIds.length; i++) {
+                out.writeInt(this.fileIds[i]);
+                out.writeInt(this.added[i]);
+                out.writeInt(this.deleted[i]);
+            }
+        }
+
+        public String getHash() {
+            return this.hash;
+        }
+
+        public String getAuthor() {
+            return this.author;
+        }
+
+        public Set<String> getIssueKeys() {
+            return this.issueKeys;
+        }
+
+        // Every file touched, java or not
+        public int getNumFiles() {
+            return this.fileIds.length;
+        }
+
+        public int getFileId(int i) {
+            return this.fileIds[i];
+        }
+
+        public int getAdded(int i) {
+            return this.added[i];
+        }
+
+        public int getDeleted(int i) {
+            return this.deleted[i];
+        }
+
+    }
+
+}
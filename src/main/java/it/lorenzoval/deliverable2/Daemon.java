@@ -0,0 +1,349 @@
+package it.lorenzoval.deliverable2;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Long running alternative to Deliverable2.main: the projects of the registry stay warm in memory between requests,
+// see ResidentState, and are driven through a local HTTP API, one request at a time per project:
+//   GET  /projects                  state of every project
+//   GET  /projects/{name}           state of one project
+//   GET  /projects/{name}/results   its evaluation results, as CSV
+//   POST /projects/{name}/refresh   fetches new commits and tags
+//   POST /projects/{name}/dataset   builds the dataset again from the first stage whose inputs changed
+//   POST /projects/{name}/evaluate  evaluates it, cells already trained coming from the cache
+//   POST /projects/{name}/risk      ranks files by risk, see RiskScorer: {"revision": "HEAD", "limit": 20} for the
+//                                   files at a revision, adding "changes": [{"author": "...", "files": [{"path": "...",
+//                                   "added": 3, "deleted": 1}]}] for the files of each change on top of it
+//   GET  /report                    the run report, as Instrumentation writes it
+//   POST /shutdown
+// Requests for what is already computed only compare keys, so they answer without running any stage
+public class Daemon {
+
+    private static final Logger logger = Logger.getLogger(Daemon.class.getName());
+    private static final int DEFAULT_PORT = 8642;
+    private static final String PROJECTS = "/projects";
+    private static final String GET = "GET";
+    private static final String POST = "POST";
+    private final Map<String, ProjectHandle> projects;
+    private final EvaluationSettings settings;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final CountDownLatch stopped;
+
+    private Daemon(ProjectRegistry registry, EvaluationSettings settings, HttpServer server) {
+        this.projects = new LinkedHashMap<>();
+        for (Project project : registry.getProjects())
+            this.projects.put(project.getProjectName(), new ProjectHandle(project));
+        this.settings = settings;
+        this.server = server;
+        // Not bounded by the registry threads: a request waiting on a busy project must not hold up the others
+        this.executor = Executors.newCachedThreadPool();
+        this.stopped = new CountDownLatch(1);
+    }
+
+    // Bound to the loopback interface only, as the API has no authentication
+    public static Daemon start(ProjectRegistry registry, EvaluationSettings settings, int port) throws IOException {
+        ResidentState.enable();
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        Daemon daemon = new Daemon(registry, settings, server);
+        server.setExecutor(daemon.executor);
+        server.createContext(PROJECTS, daemon::handleProjects);
+        server.createContext("/report", exchange -> daemon.handle(exchange, GET,
+                () -> send(exchange, 200, Instrumentation.report())));
+        server.createContext("/shutdown", exchange -> daemon.handle(exchange, POST, () -> {
+            send(exchange, 200, new JSONObject().put("stopping", true));
+            daemon.stopped.countDown();
+        }));
+        server.start();
+        logger.log(Level.INFO, "Serving {0} projects on port {1}",
+                new Object[]{daemon.projects.size(), Integer.toString(server.getAddress().getPort())});
+        return daemon;
+    }
+
+    public void awaitShutdown() throws InterruptedException {
+        this.stopped.await();
+        this.server.stop(0);
+        this.executor.shutdown();
+        ResidentState.closeAll();
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, JSONObject body) throws IOException {
+        send(exchange, status, "application/json", body.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void error(HttpExchange exchange, int status, String message) throws IOException {
+        send(exchange, status, new JSONObject().put("error", message));
+    }
+
+    // Any failure is answered, the daemon itself keeps serving
+    private void handle(HttpExchange exchange, String method, Action action) throws IOException {
+        try {
+            if (!method.equals(exchange.getRequestMethod()))
+                error(exchange, 405, "Expected " + method);
+            else
+                action.run();
+        } catch (IllegalArgumentException | JSONException e) {
+            error(exchange, 400, e.getMessage());
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Failed " + exchange.getRequestURI(), e);
+            error(exchange, 500, e.toString());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleProjects(HttpExchange exchange) throws IOException {
+        // /projects, /projects/{name} or /projects/{name}/{action}
+        String[] parts = exchange.getRequestURI().getPath().substring(PROJECTS.length()).split("/");
+        if (parts.length <= 1) {
+            handle(exchange, GET, () -> {
+                JSONArray states = new JSONArray();
+                for (ProjectHandle handle : this.projects.values())
+                    states.put(handle.state());
+                send(exchange, 200, new JSONObject().put("projects", states));
+            });
+            return;
+        }
+        ProjectHandle handle = this.projects.get(parts[1]);
+        String action = parts.length > 2 ? parts[2] : "";
+        if (handle == null || parts.length > 3) {
+            handle(exchange, exchange.getRequestMethod(), () -> error(exchange, 404, "No such project or action"));
+            return;
+        }
+        switch (action) {
+            case "":
+                handle(exchange, GET, () -> send(exchange, 200, handle.state()));
+                break;
+            case "results":
+                handle(exchange, GET, () -> handle.sendResults(exchange));
+                break;
+            case "refresh":
+                handle(exchange, POST, () -> send(exchange, 200, handle.refresh()));
+                break;
+            case "dataset":
+                handle(exchange, POST, () -> send(exchange, 200, handle.dataset()));
+                break;
+            case "evaluate":
+                handle(exchange, POST, () -> send(exchange, 200, handle.evaluate(this.settings)));
+                break;
+            case "risk":
+                handle(exchange, POST, () -> send(exchange, 200, handle.risk(this.settings,
+                        new JSONObject(IOUtils.toString(exchange.getRequestBody(), StandardCharsets.UTF_8)))));
+                break;
+            default:
+                handle(exchange, exchange.getRequestMethod(), () -> error(exchange, 404, "No action " + action));
+        }
+    }
+
+    // Arguments: port, 8642 by default, and an optional evaluation plan as for Deliverable2
+    public static void main(String[] args) throws Exception {
+        File registryFile = new File("projects.json");
+        ProjectRegistry registry = registryFile.isFile() ? ProjectRegistry.load(registryFile) :
+                ProjectRegistry.defaults();
+        EvaluationSettings settings = new EvaluationSettings();
+        if (args.length > 1)
+            settings.setPlan(EvaluationPlan.load(new File(args[1])));
+        Daemon daemon = start(registry, settings, args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT);
+        daemon.awaitShutdown();
+        Instrumentation.writeReport(new File("run_report.json"));
+    }
+
+    private interface Action {
+        void run() throws Exception;
+    }
+
+    // A project and what is known about its latest dataset and results. Stages run under the lock of the handle,
+    // while its state can be read at any time
+    private static class ProjectHandle {
+
+        private final Project project;
+        private volatile String datasetKey;
+        private volatile boolean evaluated;
+        private volatile Instant refreshed;
+        private volatile boolean busy;
+        private volatile RiskScorer scorer;
+        // Results file as last read, served again until it changes on disk
+        private final Object resultsLock = new Object();
+        private byte[] results;
+        private long resultsModified;
+
+        private ProjectHandle(Project project) {
+            this.project = project;
+        }
+
+        private JSONObject state() throws IOException {
+            JSONObject state = new JSONObject();
+            state.put("name", this.project.getProjectName());
+            state.put("busy", this.busy);
+            state.put("refreshed", this.refreshed != null ? this.refreshed.toString() : JSONObject.NULL);
+            state.put("datasetKey", this.datasetKey != null ? this.datasetKey : JSONObject.NULL);
+            state.put("evaluated", this.evaluated);
+            StageCheckpoints.Snapshot snapshot = ResidentState.of(this.project).getCheckpoints().getLatest();
+            if (snapshot != null) {
+                state.put("releases", snapshot.getReleasesList().getMain().size());
+                state.put("droppedReleases", snapshot.getReleasesList().getDropped().size());
+                if (snapshot.getBugs() != null)
+                    state.put("bugs", snapshot.getBugs().size());
+            }
+            return state;
+        }
+
+        private static long millisSince(long start) {
+            return (System.nanoTime() - start) / 1000000;
+        }
+
+        private synchronized JSONObject refresh() throws IOException, InterruptedException {
+            this.busy = true;
+            try {
+                long start = System.nanoTime();
+                boolean cloned = new File(this.project.getProjectName()).isDirectory();
+                String tags = cloned ? GitHandler.getTags(this.project) : "";
+                GitHandler.cloneOrPull(this.project);
+                this.refreshed = Instant.now();
+                return new JSONObject().put("changed", !tags.equals(GitHandler.getTags(this.project)))
+                        .put("millis", millisSince(start));
+            } finally {
+                this.busy = false;
+            }
+        }
+
+        private synchronized JSONObject dataset() throws IOException, InterruptedException {
+            if (!new File(this.project.getProjectName()).isDirectory())
+                refresh();
+            this.busy = true;
+            try {
+                long start = System.nanoTime();
+                String key = Deliverable2.buildDataset(this.project);
+                boolean changed = !key.equals(this.datasetKey);
+                this.datasetKey = key;
+                if (changed) {
+                    this.evaluated = false;
+                    this.scorer = null;
+                }
+                return new JSONObject().put("datasetKey", key).put("changed", changed)
+                        .put("millis", millisSince(start));
+            } finally {
+                this.busy = false;
+            }
+        }
+
+        private synchronized JSONObject evaluate(EvaluationSettings settings) throws Exception {
+            if (this.datasetKey == null)
+                dataset();
+            this.busy = true;
+            try {
+                long start = System.nanoTime();
+                boolean ran = Pipeline.evaluate(this.project, this.datasetKey, settings);
+                this.evaluated = true;
+                return new JSONObject().put("ran", ran).put("millis", millisSince(start));
+            } finally {
+                this.busy = false;
+            }
+        }
+
+        // Created on first use for the current dataset, which is built first if need be
+        private synchronized RiskScorer scorer(EvaluationSettings settings) throws Exception {
+            if (this.scorer == null) {
+                String key = dataset().getString("datasetKey");
+                this.busy = true;
+                try {
+                    this.scorer = RiskScorer.forProject(this.project, key, settings.getPlan());
+                } finally {
+                    this.busy = false;
+                }
+            }
+            return this.scorer;
+        }
+
+        private static JSONArray toJSON(List<RiskScorer.Score> scores, int limit) {
+            JSONArray files = new JSONArray();
+            for (RiskScorer.Score score : scores.subList(0, Math.min(limit, scores.size())))
+                files.put(new JSONObject().put("file", score.getFile()).put("risk", score.getRisk()));
+            return files;
+        }
+
+        // Outside of the lock of the stages once the scorer exists, so that scoring never waits for an evaluation
+        private JSONObject risk(EvaluationSettings settings, JSONObject request) throws Exception {
+            RiskScorer riskScorer = this.scorer != null ? this.scorer : scorer(settings);
+            long start = System.nanoTime();
+            String revision = request.optString("revision", "HEAD");
+            int limit = request.optInt("limit", Integer.MAX_VALUE);
+            JSONObject response = new JSONObject().put("model", riskScorer.getModel().getConfiguration());
+            JSONArray changes = request.optJSONArray("changes");
+            if (changes == null) {
+                response.put("files", toJSON(riskScorer.scoreRevision(revision), limit));
+            } else {
+                List<RiskScorer.Change> batch = new ArrayList<>();
+                for (int i = 0; i < changes.length(); i++) {
+                    JSONObject change = changes.getJSONObject(i);
+                    JSONArray changed = change.getJSONArray("files");
+                    List<String> paths = new ArrayList<>();
+                    int[] added = new int[changed.length()];
+                    int[] deleted = new int[changed.length()];
+                    for (int j = 0; j < changed.length(); j++) {
+                        JSONObject file = changed.getJSONObject(j);
+                        paths.add(file.getString("path"));
+                        added[j] = file.optInt("added", 0);
+                        deleted[j] = file.optInt("deleted", 0);
+                    }
+                    batch.add(new RiskScorer.Change(change.optString("author", ""), paths, added, deleted));
+                }
+                JSONArray scored = new JSONArray();
+                for (List<RiskScorer.Score> scores : riskScorer.scoreChanges(revision, batch))
+                    scored.put(new JSONObject().put("files", toJSON(scores, limit)));
+                response.put("changes", scored);
+            }
+            return response.put("millis", millisSince(start));
+        }
+
+        private void sendResults(HttpExchange exchange) throws IOException {
+            File file = ResultSink.forProject(this.project);
+            if (!file.isFile()) {
+                error(exchange, 404, "No results for " + this.project.getProjectName());
+                return;
+            }
+            byte[] body;
+            // Apart from the lock of the stages, so that results stay available while the project is evaluated
+            synchronized (this.resultsLock) {
+                if (this.results == null || file.lastModified() != this.resultsModified) {
+                    this.resultsModified = file.lastModified();
+                    this.results = FileUtils.readFileToByteArray(file);
+                }
+                body = this.results;
+            }
+            send(exchange, 200, "text/csv", body);
+        }
+
+    }
+
+}
@@ -0,0 +1,91 @@
+package it.lorenzoval.deliverable2;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public class DatasetFingerprint {
+
+    private static final String ALGORITHM = "SHA-256";
+
+    private DatasetFingerprint() {
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes)
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return sb.toString();
+    }
+
+    // Content of the instances alone: nominal values are hashed by their label and the domains of the attributes
+    // are left out, as the one of File Name lists every file of the dataset and would tie each fold to all the
+    // others. Only the labels of the class are kept, their order being the one of the predicted distributions
+    public static String of(Instances instances) {
+        MessageDigest digest = newDigest();
+        // Names and types, so that the same values under a different schema give a different key
+        for (int i = 0; i < instances.numAttributes(); i++) {
+            Attribute attribute = instances.attribute(i);
+            digest.update((attribute.name() + ":" + Attribute.typeToString(attribute))
+                    .getBytes(StandardCharsets.UTF_8));
+            if (i == instances.classIndex())
+                for (int j = 0; j < attribute.numValues(); j++)
+                    digest.update(attribute.value(j).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(Double.BYTES * (instances.numAttributes() + 1));
+        for (Instance instance : instances) {
+            buffer.clear();
+            for (int i = 0; i < instance.numAttributes(); i++) {
+                Attribute attribute = instance.attribute(i);
+                if ((attribute.isNominal() || attribute.isString()) && !instance.isMissing(i)) {
+                    digest.update(buffer.array(), 0, buffer.position());
+                    buffer.clear();
+                    digest.update(instance.stringValue(i).getBytes(StandardCharsets.UTF_8));
+                    digest.update((byte) 0);
+                } else {
+                    buffer.putDouble(instance.value(i));
+                }
+            }
+            buffer.putDouble(instance.weight());
+            digest.update(buffer.array(), 0, buffer.position());
+        }
+        return toHex(digest.digest());
+    }
+
+    // Number of values of each nominal attribute, which the content leaves out but models depend on: NaiveBayes, for
+    // one, smooths its counts over every file of File Name. Adding files to the dataset changes it, adding releases
+    // whose files are already known does not
+    public static String domainsOf(Instances instances) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < instances.numAttributes(); i++)
+            if (instances.attribute(i).isNominal())
+                sb.append(i).append(':').append(instances.attribute(i).numValues()).append(',');
+        return sb.toString();
+    }
+
+    public static String combine(String... parts) {
+        MessageDigest digest = newDigest();
+        for (String part : parts) {
+            digest.update(part.getBytes(StandardCharsets.UTF_8));
+            // Separator, so that ("ab", "c") and ("a", "bc") differ
+            digest.update((byte) 0);
+        }
+        return toHex(digest.digest());
+    }
+
+}
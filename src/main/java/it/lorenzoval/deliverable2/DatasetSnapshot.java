@@ -0,0 +1,77 @@
+package it.lorenzoval.deliverable2;
+
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+// The dataset as an ARFF header followed by the weight and raw attribute values of every instance, which worker
+// processes map read-only so that they load it from the pages of the operating system cache instead of parsing the CSV
+// again. This is not shared memory: Weka has no instances backed by a mapping, so every worker copies the whole
+// dataset to its own heap, one copy per worker on top of the one of the coordinator
+public class DatasetSnapshot {
+
+    private static final int MAGIC = 0x44325344; // D2SD
+    private static final int VERSION = 2;
+
+    private DatasetSnapshot() {
+    }
+
+    public static File forProject(Project project) {
+        return new File(project.getProjectName() + "_dataset.bin");
+    }
+
+    public static void write(Instances dataset, File file) throws IOException {
+        byte[] header = new Instances(dataset, 0).toString().getBytes(StandardCharsets.UTF_8);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(header.length);
+            out.write(header);
+            out.writeInt(dataset.classIndex());
+            out.writeInt(dataset.size());
+            out.writeInt(dataset.numAttributes());
+            for (int i = 0; i < dataset.size(); i++) {
+                out.writeDouble(dataset.get(i).weight());
+                for (int j = 0; j < dataset.numAttributes(); j++)
+                    out.writeDouble(dataset.get(i).value(j));
+            }
+        }
+    }
+
+    public static Instances read(File file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // The mapping stays valid once the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+            throw new IOException("Unsupported dataset snapshot " + file);
+        byte[] header = new byte[buffer.getInt()];
+        buffer.get(header);
+        Instances dataset = new Instances(new StringReader(new String(header, StandardCharsets.UTF_8)));
+        dataset.setClassIndex(buffer.getInt());
+        int size = buffer.getInt();
+        int numAttributes = buffer.getInt();
+        DoubleBuffer values = ((ByteBuffer) buffer.slice()).asDoubleBuffer();
+        for (int i = 0; i < size; i++) {
+            double weight = values.get();
+            double[] instance = new double[numAttributes];
+            values.get(instance);
+            dataset.add(new DenseInstance(weight, instance));
+        }
+        return dataset;
+    }
+
+}
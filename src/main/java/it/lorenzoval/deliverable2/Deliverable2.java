@@ -8,8 +8,14 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
@@ -19,7 +25,7 @@ public class Deliverable2 {
     private static final Logger logger = Logger.getLogger(Deliverable2.class.getName());
 
     public static void writeDatasetToCSV(Project project, List<Release> releases) throws IOException {
-        File outFile = new File(project.getProjectName() + "_metrics.csv");
+        File outFile = metricsFileFor(project);
         List<String> lines = new ArrayList<>();
         StringBuilder line = new StringBuilder();
         lines.add("Version,File Name,LOC,LOC_touched,NR,NFix,NAuth,LOC_added,MAX_LOC_added,AVG_LOC_added,Churn," +
@@ -62,6 +68,7 @@ public class Deliverable2 {
                     } else {
                         release.addFile(file);
                     }
+                    Instrumentation.count(Instrumentation.FILES, 1);
                 }
             }
         }
@@ -87,30 +94,164 @@ public class Deliverable2 {
         }
     }
 
-    public static void buildDataset(Project project) throws IOException, InterruptedException {
-        ReleasesList releasesList = new ReleasesList(JIRAHandler.getReleases(project));
-        logger.log(Level.INFO, "Gathering metrics for {0}", project.getProjectName());
-        getFiles(project, releasesList);
-        GitHandler.getCommitRelatedMetrics(project, releasesList.getMain());
-        GitHandler.getCommits(project, releasesList.getDropped(),
-                releasesList.getMain().get(releasesList.getMain().size() - 1));
-        logger.log(Level.INFO, "Gathering issues for {0}", project.getProjectName());
-        List<Issue> bugs = JIRAHandler.getBugs(project, releasesList);
-        setBuggyFiles(releasesList, bugs);
-        writeDatasetToCSV(project, releasesList.getMain());
+    public static File metricsFileFor(Project project) {
+        return new File(project.getProjectName() + "_metrics.csv");
+    }
+
+    // Every stage is keyed by the one before it plus its own inputs. The issue stage takes the fingerprint of the
+    // issues fetched from JIRA, without which it and the stages after it have no key yet.
+    private static Map<StageCheckpoints.Stage, String> stageKeys(Project project, String issues)
+            throws IOException, InterruptedException {
+        Map<StageCheckpoints.Stage, String> keys = new EnumMap<>(StageCheckpoints.Stage.class);
+        String key = DatasetFingerprint.combine(project.getUrl(), project.getJiraUrl(), project.getProjectName(),
+                project.getReleaseString(), GitHandler.getTags(project));
+        for (StageCheckpoints.Stage stage : StageCheckpoints.Stage.values()) {
+            if (stage == StageCheckpoints.Stage.ISSUES)
+                break;
+            key = DatasetFingerprint.combine(key, stage.name());
+            keys.put(stage, key);
+        }
+        if (issues != null)
+            putIssueKeys(project, keys, issues);
+        return keys;
+    }
+
+    private static void putIssueKeys(Project project, Map<StageCheckpoints.Stage, String> keys, String issues) {
+        String key = DatasetFingerprint.combine(keys.get(StageCheckpoints.Stage.COMMITS), issues,
+                Double.toString(project.getMovingWindow()), project.getInjectedVersions().name());
+        for (int i = StageCheckpoints.Stage.ISSUES.ordinal(); i < StageCheckpoints.Stage.EVALUATION.ordinal(); i++) {
+            StageCheckpoints.Stage stage = StageCheckpoints.Stage.values()[i];
+            key = DatasetFingerprint.combine(key, stage.name());
+            keys.put(stage, key);
+        }
+    }
+
+    // Returns the key of the dataset, which changes whenever any of the stages that built it would
+    public static String buildDataset(Project project) throws IOException, InterruptedException {
+        StageCheckpoints checkpoints = StageCheckpoints.forProject(project);
+        // Issues fetched recently enough are not fetched again, otherwise the stages from the issue one on are only
+        // keyed once they are
+        Map<StageCheckpoints.Stage, String> keys = stageKeys(project,
+                checkpoints.loadIssues(TimeUnit.HOURS.toMillis(project.getIssuesMaxAgeHours())));
+        String datasetKey = keys.get(StageCheckpoints.Stage.DATASET);
+        if (datasetKey != null && checkpoints.isValid(StageCheckpoints.Stage.DATASET, datasetKey) &&
+                metricsFileFor(project).isFile()) {
+            logger.log(Level.INFO, "Dataset of {0} is up to date", project.getProjectName());
+            return datasetKey;
+        }
+
+        // Latest stage that can be picked up from, everything after it runs again
+        StageCheckpoints.Stage done = null;
+        StageCheckpoints.Snapshot snapshot = null;
+        for (int i = StageCheckpoints.Stage.LABELS.ordinal(); i >= 0 && snapshot == null; i--) {
+            done = StageCheckpoints.Stage.values()[i];
+            if (keys.containsKey(done))
+                snapshot = checkpoints.load(done, keys.get(done));
+        }
+        ReleasesList releasesList;
+        List<Issue> bugs = null;
+        if (snapshot == null) {
+            try (Instrumentation.Span span = Instrumentation.stage(project, "releases")) {
+                releasesList = new ReleasesList(JIRAHandler.getReleases(project));
+            }
+            done = StageCheckpoints.Stage.RELEASES;
+            checkpoints.save(done, keys.get(done), new StageCheckpoints.Snapshot(releasesList, null));
+        } else {
+            logger.log(Level.INFO, "Resuming {0} after stage {1}", new Object[]{project.getProjectName(), done});
+            releasesList = snapshot.getReleasesList();
+            bugs = snapshot.getBugs();
+        }
+
+        if (done.compareTo(StageCheckpoints.Stage.ISSUES) < 0) {
+            // The JIRA crawl only needs the releases, so it runs while git is mined instead of after it
+            logger.log(Level.INFO, "Gathering issues for {0}", project.getProjectName());
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            Future<List<JIRAHandler.FetchedBug>> fetched = executor.submit(() -> {
+                try (Instrumentation.Span span = Instrumentation.stage(project, "issues")) {
+                    return JIRAHandler.fetchBugs(project, releasesList);
+                }
+            });
+            try {
+                logger.log(Level.INFO, "Gathering metrics for {0}", project.getProjectName());
+                if (done.compareTo(StageCheckpoints.Stage.FILES) < 0) {
+                    try (Instrumentation.Span span = Instrumentation.stage(project, "files")) {
+                        getFiles(project, releasesList);
+                    }
+                    done = StageCheckpoints.Stage.FILES;
+                    checkpoints.save(done, keys.get(done), new StageCheckpoints.Snapshot(releasesList, null));
+                }
+                if (done.compareTo(StageCheckpoints.Stage.COMMITS) < 0) {
+                    try (Instrumentation.Span span = Instrumentation.stage(project, "commits")) {
+                        GitHandler.getCommitRelatedMetrics(project, releasesList.getMain());
+                        GitHandler.getCommits(project, releasesList.getDropped(),
+                                releasesList.getMain().get(releasesList.getMain().size() - 1));
+                    }
+                    done = StageCheckpoints.Stage.COMMITS;
+                    checkpoints.save(done, keys.get(done), new StageCheckpoints.Snapshot(releasesList, null));
+                }
+                // Whatever is left of the crawl is waited for here, and shows up in this stage
+                try (Instrumentation.Span span = Instrumentation.stage(project, "linking")) {
+                    List<JIRAHandler.FetchedBug> fetchedBugs = fetched.get();
+                    String issues = JIRAHandler.fingerprint(fetchedBugs);
+                    checkpoints.saveIssues(issues);
+                    putIssueKeys(project, keys, issues);
+                    bugs = JIRAHandler.linkBugs(project, releasesList, fetchedBugs);
+                }
+                if (project.getInjectedVersions() == Project.InjectedVersions.SZZ) {
+                    try (Instrumentation.Span span = Instrumentation.stage(project, "szz")) {
+                        SzzEngine.apply(project, releasesList, bugs);
+                    }
+                }
+                done = StageCheckpoints.Stage.ISSUES;
+                checkpoints.save(done, keys.get(done), new StageCheckpoints.Snapshot(releasesList, bugs));
+            } catch (ExecutionException e) {
+                throw new IOException("Unable to gather issues for " + project.getProjectName(), e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        if (done.compareTo(StageCheckpoints.Stage.LABELS) < 0) {
+            try (Instrumentation.Span span = Instrumentation.stage(project, "labels")) {
+                setBuggyFiles(releasesList, bugs);
+            }
+            done = StageCheckpoints.Stage.LABELS;
+            checkpoints.save(done, keys.get(done), new StageCheckpoints.Snapshot(releasesList, bugs));
+        }
+        try (Instrumentation.Span span = Instrumentation.stage(project, "dataset")) {
+            writeDatasetToCSV(project, releasesList.getMain());
+        }
+        datasetKey = keys.get(StageCheckpoints.Stage.DATASET);
+        checkpoints.save(StageCheckpoints.Stage.DATASET, datasetKey, null);
+        return datasetKey;
+    }
+
+    // Labelled releases and bugs the dataset was written from, null unless it was built with the same inputs. The
+    // issues it was built from are taken however old they are
+    static StageCheckpoints.Snapshot loadHistory(Project project) throws IOException, InterruptedException {
+        StageCheckpoints checkpoints = StageCheckpoints.forProject(project);
+        String issues = checkpoints.loadIssues(Long.MAX_VALUE);
+        if (issues == null)
+            return null;
+        StageCheckpoints.Stage stage = StageCheckpoints.Stage.LABELS;
+        return checkpoints.load(stage, stageKeys(project, issues).get(stage));
     }
 
     public static void main(String[] args) throws Exception {
-        Project syncope = new Syncope();
-        Project bookkeeper = new Bookkeeper();
-        logger.log(Level.INFO, "Updating projects");
-        GitHandler.cloneOrPull(syncope);
-        GitHandler.cloneOrPull(bookkeeper);
-        logger.log(Level.INFO, "Generating datasets");
-        buildDataset(syncope);
-        buildDataset(bookkeeper);
-        WekaHandler.evaluateDataset(syncope);
-        WekaHandler.evaluateDataset(bookkeeper);
+        // Projects to track and the budget shared by their stages, or the two of the original study
+        File registryFile = new File("projects.json");
+        ProjectRegistry registry = registryFile.isFile() ? ProjectRegistry.load(registryFile) :
+                ProjectRegistry.defaults();
+        EvaluationSettings settings = new EvaluationSettings();
+        // Optional plan file restricting the evaluation to a subset of the technique matrix
+        if (args.length > 0)
+            settings.setPlan(EvaluationPlan.load(new File(args[0])));
+        logger.log(Level.INFO, "Processing {0} projects", registry.getProjects().size());
+        List<String> failed = new Pipeline(registry, settings).run();
+        // Machine readable account of where the time went, see Instrumentation
+        Instrumentation.writeReport(new File("run_report.json"));
+        if (!failed.isEmpty())
+            throw new IllegalStateException("Failed projects: " + failed);
     }
 
 }
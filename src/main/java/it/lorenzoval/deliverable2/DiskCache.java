@@ -0,0 +1,180 @@
+package it.lorenzoval.deliverable2;
+
+import weka.core.SerializationHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class DiskCache {
+
+    private static final Logger logger = Logger.getLogger(DiskCache.class.getName());
+    private static final String EXTENSION = ".ser";
+    private static final long DEFAULT_MAX_BYTES = 2L * 1024 * 1024 * 1024;
+    private final File directory;
+    // Zero when another process, sharing the directory, evicts for it
+    private final long maxBytes;
+    // Immutable entries already read or written, when resident, for as long as the heap can spare them. The ones the
+    // collector cleared are queued up for removal
+    private final Map<String, Remembered> memory;
+    private final ReferenceQueue<Object> cleared;
+    private long size;
+
+    public DiskCache(File directory, long maxBytes) throws IOException {
+        this(directory, maxBytes, false);
+    }
+
+    private DiskCache(File directory, long maxBytes, boolean resident) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Unable to create cache directory " + directory);
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.memory = resident ? new HashMap<>() : null;
+        this.cleared = new ReferenceQueue<>();
+        this.size = 0;
+        for (File file : listEntries())
+            this.size += file.length();
+    }
+
+    public static DiskCache forProject(Project project) throws IOException {
+        ResidentState state = ResidentState.of(project);
+        return state != null ? state.getCache() : new DiskCache(directoryFor(project), DEFAULT_MAX_BYTES);
+    }
+
+    // Cache of a worker process, storing into the directory of the coordinator, which alone evicts as only it knows
+    // when the other workers are done writing
+    public static DiskCache shared(File directory) throws IOException {
+        return new DiskCache(directory, 0);
+    }
+
+    static DiskCache resident(Project project) throws IOException {
+        return new DiskCache(directoryFor(project), DEFAULT_MAX_BYTES, true);
+    }
+
+    public static File directoryFor(Project project) {
+        return new File(project.getProjectName() + "_cache");
+    }
+
+    private File[] listEntries() {
+        File[] files = this.directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        return files != null ? files : new File[0];
+    }
+
+    private File fileFor(String key) {
+        return new File(this.directory, key + EXTENSION);
+    }
+
+    public synchronized Object get(String key) {
+        File file = fileFor(key);
+        if (!file.isFile())
+            return null;
+        forgetCleared();
+        // Values are only ever read once stored, so the copy in memory is as good as the file
+        Object remembered = this.memory != null && this.memory.containsKey(key) ? this.memory.get(key).get() : null;
+        if (remembered != null) {
+            touch(file);
+            return remembered;
+        }
+        Object value;
+        try {
+            value = SerializationHelper.read(file.getPath());
+        } catch (Exception e) {
+            // A corrupted or outdated entry is just a miss
+            logger.log(Level.WARNING, "Discarding unreadable cache entry {0}", file.getName());
+            return null;
+        }
+        touch(file);
+        remember(key, value);
+        return value;
+    }
+
+    // Last modified time doubles as last access time for eviction
+    private static void touch(File file) {
+        if (!file.setLastModified(System.currentTimeMillis()))
+            logger.log(Level.FINE, "Unable to touch cache entry {0}", file.getName());
+    }
+
+    public synchronized boolean contains(String key) {
+        return fileFor(key).isFile();
+    }
+
+    public synchronized void put(String key, Object value) throws Exception {
+        File file = fileFor(key);
+        // Unique, as worker processes may be storing the same entry at the same time
+        File temp = File.createTempFile(key, ".tmp", this.directory);
+        SerializationHelper.write(temp.getPath(), value);
+        long previous = file.isFile() ? file.length() : 0;
+        // Rename only once fully written, so that a crash never leaves a truncated entry behind
+        if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file)))
+            throw new IOException("Unable to store cache entry " + file);
+        this.size += file.length() - previous;
+        remember(key, value);
+        if (this.size > this.maxBytes)
+            evict();
+    }
+
+    // Every caller gets the same object back, so mutable values, such as instances and models, are read from the
+    // file every time instead
+    private void remember(String key, Object value) {
+        if (this.memory != null && (value instanceof Immutable || value instanceof Number || value instanceof String))
+            this.memory.put(key, new Remembered(key, value, this.cleared));
+    }
+
+    private void forgetCleared() {
+        Remembered reference;
+        while ((reference = (Remembered) this.cleared.poll()) != null)
+            // Unless already replaced by a newer one
+            this.memory.remove(reference.key, reference);
+    }
+
+    // Brings the directory back within the limit. The size is counted again from the directory first, as the worker
+    // processes sharing it store entries this process did not count
+    public synchronized void evict() {
+        if (this.maxBytes <= 0)
+            return;
+        File[] files = listEntries();
+        this.size = 0;
+        for (File file : files)
+            this.size += file.length();
+        if (this.size <= this.maxBytes)
+            return;
+        // Least recently used first
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (this.size <= this.maxBytes)
+                break;
+            long length = file.length();
+            if (file.delete()) {
+                this.size -= length;
+                if (this.memory != null)
+                    this.memory.remove(file.getName().substring(0, file.getName().length() - EXTENSION.length()));
+            }
+        }
+        logger.log(Level.FINE, "Cache {0} evicted down to {1} bytes", new Object[]{this.directory, this.size});
+    }
+
+    // Values never changed once stored, the only ones besides numbers and strings a resident cache hands out
+    // directly
+    public interface Immutable extends Serializable {
+    }
+
+    private static class Remembered extends SoftReference<Object> {
+
+        private final String key;
+
+        private Remembered(String key, Object value, ReferenceQueue<Object> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+
+    }
+
+}
@@ -0,0 +1,113 @@
+package it.lorenzoval.deliverable2;
+
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class EvaluationContext {
+
+    private final DiskCache cache;
+    private final ResultSink resultSink;
+    private final EvaluationSettings settings;
+    private final IncrementalModels incrementalModels;
+    private final Map<Instances, String> fingerprints;
+    private int[] previousSelection;
+    private final List<String> hyperparameterLines;
+    private Map<String, Classifier> tunedClassifiers;
+    private final GridPruner pruner;
+    private WorkerPool workerPool;
+
+    public EvaluationContext(DiskCache cache, ResultSink resultSink, EvaluationSettings settings) {
+        this.cache = cache;
+        this.resultSink = resultSink;
+        this.settings = settings;
+        this.incrementalModels = settings.isIncremental() ? new IncrementalModels() : null;
+        this.fingerprints = new IdentityHashMap<>();
+        this.hyperparameterLines = new ArrayList<>();
+        this.tunedClassifiers = Collections.emptyMap();
+        this.pruner = settings.isPruning() ? new GridPruner(settings) : null;
+    }
+
+    public void startFold(Instances testingSet) {
+        // The training set is extended in place between folds, so its fingerprint must not outlive the fold
+        this.fingerprints.clear();
+        // Workers have no results of their own
+        if (this.resultSink != null)
+            this.resultSink.getPredictionStore().setTestingSet(testingSet);
+    }
+
+    public String fingerprint(Instances instances) {
+        return this.fingerprints.computeIfAbsent(instances, DatasetFingerprint::of);
+    }
+
+    public void setFingerprint(Instances instances, String fingerprint) {
+        this.fingerprints.put(instances, fingerprint);
+    }
+
+    public int[] getPreviousSelection() {
+        return this.previousSelection;
+    }
+
+    public void setPreviousSelection(int[] previousSelection) {
+        this.previousSelection = previousSelection;
+    }
+
+    public boolean isPruning() {
+        return this.pruner != null;
+    }
+
+    public GridPruner getPruner() {
+        return this.pruner;
+    }
+
+    // Null when cells are trained in this process only
+    public WorkerPool getWorkerPool() {
+        return this.workerPool;
+    }
+
+    public void setWorkerPool(WorkerPool workerPool) {
+        this.workerPool = workerPool;
+    }
+
+    public List<String> getHyperparameterLines() {
+        return this.hyperparameterLines;
+    }
+
+    public Classifier getTunedClassifier(String name) {
+        return this.tunedClassifiers.get(name);
+    }
+
+    public void setTunedClassifiers(Map<String, Classifier> tunedClassifiers) {
+        this.tunedClassifiers = tunedClassifiers;
+    }
+
+    public DiskCache getCache() {
+        return this.cache;
+    }
+
+    public ResultSink getResultSink() {
+        return this.resultSink;
+    }
+
+    public PredictionStore getPredictionStore() {
+        return this.resultSink.getPredictionStore();
+    }
+
+    public EvaluationSettings getSettings() {
+        return this.settings;
+    }
+
+    public boolean isIncremental() {
+        return this.incrementalModels != null;
+    }
+
+    public IncrementalModels getIncrementalModels() {
+        return this.incrementalModels;
+    }
+
+}
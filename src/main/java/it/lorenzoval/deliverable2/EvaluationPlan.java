@@ -0,0 +1,299 @@
+package it.lorenzoval.deliverable2;
+
+import org.apache.commons.io.FileUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import weka.classifiers.CostMatrix;
+import weka.core.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+public class EvaluationPlan {
+
+    public static final String NO_SELECTION = "No selection";
+    public static final String BEST_FIRST = "BestFirst";
+    public static final String NO_SAMPLING = "No sampling";
+    public static final String OVERSAMPLING = "Oversampling";
+    public static final String UNDERSAMPLING = "Undersampling";
+    public static final String SMOTE = "SMOTE";
+    public static final String NO_COST_SENSITIVE = "No cost sensitive";
+    public static final String SENSITIVE_THRESHOLD = "Sensitive threshold";
+    public static final String SENSITIVE_LEARNING = "Sensitive learning";
+    private static final List<String> FEATURE_SELECTIONS = Arrays.asList(NO_SELECTION, BEST_FIRST);
+    private static final List<String> BALANCINGS = Arrays.asList(NO_SAMPLING, OVERSAMPLING, UNDERSAMPLING, SMOTE);
+    private static final List<String> SENSITIVITIES = Arrays.asList(NO_COST_SENSITIVE, SENSITIVE_THRESHOLD,
+            SENSITIVE_LEARNING);
+    private final List<String> featureSelections;
+    private final List<String> balancings;
+    private final List<ClassifierSpec> classifiers;
+    private final List<CostSpec> costMatrices;
+    private final Set<String> sensitivities;
+    private final int firstRelease;
+    private final int lastRelease;
+
+    public EvaluationPlan(List<String> featureSelections, List<String> balancings, List<ClassifierSpec> classifiers,
+                          List<CostSpec> costMatrices, Set<String> sensitivities, int firstRelease,
+                          int lastRelease) {
+        checkNames(featureSelections, FEATURE_SELECTIONS);
+        checkNames(balancings, BALANCINGS);
+        checkNames(sensitivities, SENSITIVITIES);
+        for (ClassifierSpec classifier : classifiers)
+            checkLabel(classifier.getName());
+        for (CostSpec costMatrix : costMatrices)
+            checkLabel(costMatrix.getName());
+        // The first release has no training set
+        if (firstRelease < 2 || lastRelease < firstRelease)
+            throw new IllegalArgumentException("Invalid release range [" + firstRelease + ", " + lastRelease + "]");
+        this.featureSelections = featureSelections;
+        this.balancings = balancings;
+        this.classifiers = classifiers;
+        this.costMatrices = costMatrices;
+        this.sensitivities = sensitivities;
+        this.firstRelease = firstRelease;
+        this.lastRelease = lastRelease;
+    }
+
+    private static void checkNames(Iterable<String> names, List<String> known) {
+        for (String name : names)
+            if (!known.contains(name))
+                throw new IllegalArgumentException("Unknown technique " + name + ", expected one of " + known);
+    }
+
+    // Labels end up in a field of the results, quoted if needed, but a line break would split their row
+    private static void checkLabel(String name) {
+        if (name != null && (name.indexOf('\n') >= 0 || name.indexOf('\r') >= 0))
+            throw new IllegalArgumentException("Line break in name " + name);
+    }
+
+    // The whole technique matrix on every fold
+    public static EvaluationPlan full() {
+        List<ClassifierSpec> classifiers = new ArrayList<>();
+        classifiers.add(new ClassifierSpec(null, "weka.classifiers.bayes.NaiveBayes", new String[0]));
+        classifiers.add(new ClassifierSpec(null, "weka.classifiers.trees.RandomForest", new String[0]));
+        classifiers.add(new ClassifierSpec(null, "weka.classifiers.lazy.IBk", new String[0]));
+        return new EvaluationPlan(FEATURE_SELECTIONS, BALANCINGS, classifiers,
+                Collections.singletonList(new CostSpec(null, 1.0, 10.0)), new LinkedHashSet<>(SENSITIVITIES), 2,
+                Integer.MAX_VALUE);
+    }
+
+    private static List<String> stringList(JSONObject json, String key, List<String> defaults) {
+        if (!json.has(key))
+            return defaults;
+        JSONArray array = json.getJSONArray(key);
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < array.length(); i++)
+            values.add(array.getString(i));
+        return values;
+    }
+
+    // Every key is optional and falls back to the full matrix, e.g.
+    // {"featureSelections": ["No selection"], "balancings": ["No sampling", "SMOTE"],
+    //  "classifiers": [{"class": "weka.classifiers.trees.RandomForest", "options": "-I 50", "name": "RF50"}],
+    //  "costMatrices": [{"name": "FN5", "falsePositive": 1, "falseNegative": 5}],
+    //  "sensitivities": ["Sensitive threshold"], "firstRelease": 5, "lastRelease": 8}
+    public static EvaluationPlan load(File file) throws Exception {
+        JSONObject json = new JSONObject(FileUtils.readFileToString(file, StandardCharsets.UTF_8));
+        EvaluationPlan full = full();
+
+        List<ClassifierSpec> classifiers = full.classifiers;
+        if (json.has("classifiers")) {
+            classifiers = new ArrayList<>();
+            JSONArray array = json.getJSONArray("classifiers");
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject classifier = array.getJSONObject(i);
+                classifiers.add(new ClassifierSpec(classifier.optString("name", null), classifier.getString("class"),
+                        Utils.splitOptions(classifier.optString("options", ""))));
+            }
+        }
+
+        List<CostSpec> costMatrices = full.costMatrices;
+        if (json.has("costMatrices")) {
+            costMatrices = new ArrayList<>();
+            JSONArray array = json.getJSONArray("costMatrices");
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject costMatrix = array.getJSONObject(i);
+                costMatrices.add(new CostSpec(costMatrix.optString("name", null),
+                        costMatrix.getDouble("falsePositive"), costMatrix.getDouble("falseNegative")));
+            }
+        }
+
+        try {
+            return new EvaluationPlan(stringList(json, "featureSelections", full.featureSelections),
+                    stringList(json, "balancings", full.balancings), classifiers, costMatrices,
+                    new LinkedHashSet<>(stringList(json, "sensitivities", SENSITIVITIES)),
+                    json.optInt("firstRelease", full.firstRelease), json.optInt("lastRelease", full.lastRelease));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid evaluation plan " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    public boolean includes(String sensitivity) {
+        return this.sensitivities.contains(sensitivity);
+    }
+
+    public int getFirstRelease() {
+        return this.firstRelease;
+    }
+
+    public int getLastRelease() {
+        return this.lastRelease;
+    }
+
+    // Identifies the plan, so that results of a different one are never taken as part of the same run
+    public String describe() {
+        StringBuilder description = new StringBuilder();
+        description.append(this.featureSelections).append(this.balancings).append('[');
+        for (ClassifierSpec classifier : this.classifiers)
+            description.append(classifier.name).append('|').append(classifier.className).append('|')
+                    .append(Utils.joinOptions(classifier.options)).append(';');
+        description.append("][");
+        for (CostSpec costMatrix : this.costMatrices)
+            description.append(costMatrix.name).append('|').append(costMatrix.falsePositive).append('|')
+                    .append(costMatrix.falseNegative).append(';');
+        return description.append(']').append(this.sensitivities).append(this.firstRelease).append('-')
+                .append(this.lastRelease).toString();
+    }
+
+    public int getNumJobs() {
+        return this.featureSelections.size() * this.balancings.size() * this.classifiers.size() *
+                this.costMatrices.size();
+    }
+
+    // Jobs are generated one at a time, ordered so that consecutive ones share feature selection and balancing
+    public Iterable<Job> jobs() {
+        return () -> new Iterator<Job>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return this.next < getNumJobs();
+            }
+
+            @Override
+            public Job next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                // Mixed radix decomposition of the job number, cost matrix varying fastest
+                int index = this.next++;
+                CostSpec costMatrix = costMatrices.get(index % costMatrices.size());
+                index /= costMatrices.size();
+                ClassifierSpec classifier = classifiers.get(index % classifiers.size());
+                index /= classifiers.size();
+                String balancing = balancings.get(index % balancings.size());
+                index /= balancings.size();
+                return new Job(this.next - 1, featureSelections.get(index), balancing, classifier, costMatrix);
+            }
+        };
+    }
+
+    public static class ClassifierSpec {
+
+        private final String name;
+        private final String className;
+        private final String[] options;
+
+        public ClassifierSpec(String name, String className, String[] options) {
+            this.name = name;
+            this.className = className;
+            this.options = options;
+        }
+
+        // Null to label results with the class name
+        public String getName() {
+            return this.name;
+        }
+
+        public String getClassName() {
+            return this.className;
+        }
+
+        public String[] getOptions() {
+            return this.options.clone();
+        }
+
+        public boolean hasOptions() {
+            return this.options.length > 0;
+        }
+
+    }
+
+    public static class CostSpec {
+
+        private final String name;
+        private final double falsePositive;
+        private final double falseNegative;
+
+        public CostSpec(String name, double falsePositive, double falseNegative) {
+            this.name = name;
+            this.falsePositive = falsePositive;
+            this.falseNegative = falseNegative;
+        }
+
+        // Null when the plan has a single, unnamed cost matrix
+        public String getName() {
+            return this.name;
+        }
+
+        public CostMatrix create() {
+            // Buggy is the first class
+            CostMatrix costMatrix = new CostMatrix(2);
+            costMatrix.setCell(0, 0, 0.0);
+            costMatrix.setCell(1, 0, this.falsePositive);
+            costMatrix.setCell(0, 1, this.falseNegative);
+            costMatrix.setCell(1, 1, 0.0);
+            return costMatrix;
+        }
+
+    }
+
+    public static class Job {
+
+        private final int index;
+        private final String featureSelection;
+        private final String balancing;
+        private final ClassifierSpec classifier;
+        private final CostSpec costMatrix;
+
+        private Job(int index, String featureSelection, String balancing, ClassifierSpec classifier,
+                    CostSpec costMatrix) {
+            this.index = index;
+            this.featureSelection = featureSelection;
+            this.balancing = balancing;
+            this.classifier = classifier;
+            this.costMatrix = costMatrix;
+        }
+
+        // Position in the plan, the same on every fold
+        public int getIndex() {
+            return this.index;
+        }
+
+        public String getFeatureSelection() {
+            return this.featureSelection;
+        }
+
+        public String getBalancing() {
+            return this.balancing;
+        }
+
+        public ClassifierSpec getClassifier() {
+            return this.classifier;
+        }
+
+        public CostSpec getCostMatrix() {
+            return this.costMatrix;
+        }
+
+    }
+
+}
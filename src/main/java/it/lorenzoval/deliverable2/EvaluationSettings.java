@@ -0,0 +1,184 @@
+package it.lorenzoval.deliverable2;
+
+import weka.core.neighboursearch.BallTree;
+import weka.core.neighboursearch.KDTree;
+import weka.core.neighboursearch.LinearNNSearch;
+import weka.core.neighboursearch.NearestNeighbourSearch;
+
+public class EvaluationSettings {
+
+    private boolean incremental;
+    private NeighbourSearch neighbourSearch;
+    private Search hyperparameterSearch;
+    private int threads;
+    private PruningMetric pruningMetric;
+    private double pruningQuantile;
+    private int pruningMinSurvivors;
+    private int pruningWarmupFolds;
+    private EvaluationPlan plan;
+    private int workers;
+    private String workerBindAddress;
+    private int workerTaskTimeoutSeconds;
+
+    public EvaluationSettings() {
+        this.incremental = false;
+        this.neighbourSearch = NeighbourSearch.LINEAR;
+        this.hyperparameterSearch = Search.NONE;
+        this.threads = Runtime.getRuntime().availableProcessors();
+        this.pruningMetric = null;
+        this.pruningQuantile = 0.5;
+        this.pruningMinSurvivors = 4;
+        this.pruningWarmupFolds = 2;
+        this.plan = EvaluationPlan.full();
+        this.workers = 0;
+        this.workerBindAddress = "127.0.0.1";
+        this.workerTaskTimeoutSeconds = 3600;
+    }
+
+    public boolean isIncremental() {
+        return this.incremental;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public NeighbourSearch getNeighbourSearch() {
+        return this.neighbourSearch;
+    }
+
+    public void setNeighbourSearch(NeighbourSearch neighbourSearch) {
+        this.neighbourSearch = neighbourSearch;
+    }
+
+    public Search getHyperparameterSearch() {
+        return this.hyperparameterSearch;
+    }
+
+    public void setHyperparameterSearch(Search hyperparameterSearch) {
+        this.hyperparameterSearch = hyperparameterSearch;
+    }
+
+    public int getThreads() {
+        return this.threads;
+    }
+
+    // Threads an evaluation may use at once for feature selection and hyperparameter search, a core each by default
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public boolean isPruning() {
+        return this.pruningMetric != null;
+    }
+
+    public PruningMetric getPruningMetric() {
+        return this.pruningMetric;
+    }
+
+    // Null evaluates the full grid on every fold
+    public void setPruningMetric(PruningMetric pruningMetric) {
+        this.pruningMetric = pruningMetric;
+    }
+
+    public double getPruningQuantile() {
+        return this.pruningQuantile;
+    }
+
+    // Share of the surviving configurations discarded after each fold, 0.5 halves them
+    public void setPruningQuantile(double pruningQuantile) {
+        this.pruningQuantile = pruningQuantile;
+    }
+
+    public int getPruningMinSurvivors() {
+        return this.pruningMinSurvivors;
+    }
+
+    public void setPruningMinSurvivors(int pruningMinSurvivors) {
+        this.pruningMinSurvivors = pruningMinSurvivors;
+    }
+
+    public int getPruningWarmupFolds() {
+        return this.pruningWarmupFolds;
+    }
+
+    // Number of earliest folds on which every configuration is evaluated before any is discarded
+    public void setPruningWarmupFolds(int pruningWarmupFolds) {
+        this.pruningWarmupFolds = pruningWarmupFolds;
+    }
+
+    public EvaluationPlan getPlan() {
+        return this.plan;
+    }
+
+    public void setPlan(EvaluationPlan plan) {
+        this.plan = plan;
+    }
+
+    public int getWorkers() {
+        return this.workers;
+    }
+
+    // Number of worker processes training the cells of each fold, 0 trains them all in this process
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    public String getWorkerBindAddress() {
+        return this.workerBindAddress;
+    }
+
+    // Loopback by default, a reachable address lets workers started on other nodes join
+    public void setWorkerBindAddress(String workerBindAddress) {
+        this.workerBindAddress = workerBindAddress;
+    }
+
+    public int getWorkerTaskTimeoutSeconds() {
+        return this.workerTaskTimeoutSeconds;
+    }
+
+    // Longest wait for a worker to train a cell, after which the worker is given up on and the cell trained elsewhere
+    public void setWorkerTaskTimeoutSeconds(int workerTaskTimeoutSeconds) {
+        this.workerTaskTimeoutSeconds = workerTaskTimeoutSeconds;
+    }
+
+    // Settings changing the results, the number of threads is left out
+    public String describe() {
+        return "incremental=" + this.incremental + ",neighbourSearch=" + this.neighbourSearch +
+                ",hyperparameterSearch=" + this.hyperparameterSearch + ",pruning=" + this.pruningMetric + "/" +
+                this.pruningQuantile + "/" + this.pruningMinSurvivors + "/" + this.pruningWarmupFolds + ",plan=" +
+                this.plan.describe();
+    }
+
+    public enum PruningMetric {
+        AUC,
+        KAPPA
+    }
+
+    public enum Search {
+        NONE,
+        GRID,
+        RANDOM
+    }
+
+    public enum NeighbourSearch {
+        // All find the same neighbours, except for which ones are kept among equally distant ones: the trees are
+        // opt-in, so that results stay the ones of the linear search unless asked otherwise. NeighbourSearchBenchmark
+        // compares them on datasets of realistic size
+        LINEAR,
+        KD_TREE,
+        BALL_TREE;
+
+        public NearestNeighbourSearch create() {
+            switch (this) {
+                case KD_TREE:
+                    return new KDTree();
+                case BALL_TREE:
+                    return new BallTree();
+                default:
+                    return new LinearNNSearch();
+            }
+        }
+    }
+
+}
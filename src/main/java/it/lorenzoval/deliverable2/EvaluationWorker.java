@@ -0,0 +1,53 @@
+package it.lorenzoval.deliverable2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.Socket;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Worker process: trains the cells sent by the coordinator into the shared cache until told to stop
+public class EvaluationWorker {
+
+    private static final Logger logger = Logger.getLogger(EvaluationWorker.class.getName());
+
+    private EvaluationWorker() {
+    }
+
+    // Arguments: coordinator host, coordinator port, dataset snapshot, cache directory. Replies to each task with the
+    // nanoseconds spent training, none when the cache already had the cell, or with the error that stopped it
+    public static void main(String[] args) throws Exception {
+        WalkForwardFolds folds = new WalkForwardFolds(DatasetSnapshot.read(new File(args[2])));
+        EvaluationContext context = new EvaluationContext(DiskCache.shared(new File(args[3])), null,
+                new EvaluationSettings());
+        int release = 0;
+        try (Socket socket = new Socket(args[0], Integer.parseInt(args[1]))) {
+            ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.flush();
+            ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+            CellTask task;
+            while ((task = (CellTask) in.readObject()) != null) {
+                Object reply;
+                if (task.getRelease() != release) {
+                    release = task.getRelease();
+                    context.startFold(null);
+                }
+                try {
+                    long start = System.nanoTime();
+                    CellResult trained = WekaHandler.trainCell(context, folds, task);
+                    reply = trained != null ? System.nanoTime() - start : 0L;
+                } catch (Exception e) {
+                    // The coordinator trains the cell itself, nothing else to do here
+                    logger.log(Level.WARNING, "Unable to train cell", e);
+                    reply = e.toString();
+                }
+                out.writeObject(reply);
+                out.flush();
+            }
+        }
+    }
+
+}
@@ -1,15 +1,26 @@
 package it.lorenzoval.deliverable2;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -18,13 +29,28 @@ public class GitHandler {
     private static final Logger logger = Logger.getLogger(GitHandler.class.getName());
     private static final String NP = "--no-pager";
     private static final String DATE_FORMAT = "--format=%cs";
-    private static final String COMMIT_FORMAT = "--pretty=format:$%h$%an$%s";
+    private static final String STATS_FORMAT = "--format=%x00%H%x00%an%x00%s";
+    private static final String TIMED_FORMAT = "--format=%x00%H%x00%an%x00%at%x00%s";
     private static final String NUMSTAT = "--numstat";
     private static final String NO_MERGES = "--no-merges";
 
     private GitHandler() {
     }
 
+    // Every git process goes through here, so that the run report counts them and the output they produce
+    private static String run(ProcessBuilder pb) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Process pr = pb.start();
+        CountingInputStream counter = new CountingInputStream(pr.getInputStream());
+        String output = IOUtils.toString(counter, StandardCharsets.UTF_8);
+        pr.waitFor();
+        // Timed per subcommand
+        List<String> command = pb.command();
+        Instrumentation.gitProcess(command.get(NP.equals(command.get(1)) ? 2 : 1), counter.getByteCount(),
+                System.nanoTime() - start);
+        return output;
+    }
+
     public static void cloneOrPull(Project project) throws IOException, InterruptedException {
         String projectName = project.getProjectName();
         String url = project.getUrl();
@@ -50,8 +76,15 @@ public class GitHandler {
         }
         logger.log(Level.INFO, logMsg);
         pb.inheritIO();
-        Process pr = pb.start();
-        pr.waitFor();
+        run(pb);
+    }
+
+    // Every tag with the commit it points to: releases, files and commits are all read at tags
+    public static String getTags(Project project) throws IOException, InterruptedException {
+        File file = new File(project.getProjectName());
+        ProcessBuilder pb = new ProcessBuilder("git", "show-ref", "--tags");
+        pb.directory(file);
+        return run(pb);
     }
 
     public static LocalDate getReleaseDate(Project project, String releaseName) throws IOException, InterruptedException {
@@ -60,10 +93,9 @@ public class GitHandler {
         ProcessBuilder pb = new ProcessBuilder();
         pb.directory(file);
         pb.command("git", "log", "-1", DATE_FORMAT, MessageFormat.format(project.getReleaseString(), releaseName));
-        Process pr = pb.start();
-        String output = IOUtils.toString(pr.getInputStream(), StandardCharsets.UTF_8);
-        pr.waitFor();
-        if (pr.exitValue() != 0) {
+        String output = run(pb);
+        // Unknown tag
+        if (output.isEmpty()) {
             return null;
         } else {
             // Remove \n
@@ -80,8 +112,7 @@ public class GitHandler {
                 MessageFormat.format("tags/{0}", tagName));
         pb.directory(file);
         pb.inheritIO();
-        Process pr = pb.start();
-        pr.waitFor();
+        run(pb);
     }
 
     public static List<String> getFiles(Project project) throws IOException, InterruptedException {
@@ -89,9 +120,7 @@ public class GitHandler {
         File file = new File(projectName);
         ProcessBuilder pb = new ProcessBuilder("git", "ls-files", "*.java");
         pb.directory(file);
-        Process pr = pb.start();
-        String files = IOUtils.toString(pr.getInputStream(), StandardCharsets.UTF_8);
-        pr.waitFor();
+        String files = run(pb);
         return Arrays.asList(files.split("\n"));
     }
 
@@ -101,15 +130,11 @@ public class GitHandler {
         ProcessBuilder pb = new ProcessBuilder("git", "log", "-1", "--diff-filter=A", DATE_FORMAT,
                 "--", fileName);
         pb.directory(file);
-        Process pr = pb.start();
-        String output = IOUtils.toString(pr.getInputStream(), StandardCharsets.UTF_8);
-        pr.waitFor();
+        String output = run(pb);
         if (output.isEmpty()) {
             // If it was not possible to find commit in which file got added, take first commit of file
             pb.command("git", NP, "log", "--reverse", DATE_FORMAT, fileName);
-            pr = pb.start();
-            output = IOUtils.toString(pr.getInputStream(), StandardCharsets.UTF_8);
-            pr.waitFor();
+            output = run(pb);
             output = output.substring(0, output.indexOf("\n"));
         } else {
             // Remove \n
@@ -118,157 +143,369 @@ public class GitHandler {
         return LocalDate.parse(output);
     }
 
-    private static int countFiles(String[] lines, int i) {
-        int j = i;
-        while (j < lines.length - 1) {
-            if (lines[j + 1].isEmpty() || lines[j + 1].charAt(0) == '$')
-                break;
-            j++;
-        }
-        return j - i;
-    }
-
     public static void addCommitIfNotEmpty(Release release, Commit commit) {
         // Only consider commits related to at least one java file
         if (!commit.getFiles().isEmpty())
             release.addCommit(commit);
     }
 
-    public static void parseMainLines(String output, Release release) {
-        String[] lines = output.split("\n");
-        String hash = null;
-        String author = null;
-        String subject = null;
-        int locAdded;
-        int locDeleted;
-        int chgSetSize = 0;
-        List<String> files = new ArrayList<>();
-        for (int i = 0; i < lines.length; i++) {
-            String str = lines[i];
-            if (!str.isEmpty()) {
-                if (str.charAt(0) == '$') {
-                    // Add previous commit
-                    if (hash != null) {
-                        addCommitIfNotEmpty(release, new Commit(hash, author, subject, files));
-                        files = new ArrayList<>();
-                    }
+    private static String tagOf(Project project, Release release) {
+        return MessageFormat.format(project.getReleaseString(), release.getName());
+    }
 
-                    chgSetSize = countFiles(lines, i) - 1; // Files committed together with C
-                    String[] values = str.substring(1).split("\\$");
-                    hash = values[0];
-                    author = values[1];
-                    subject = values[2];
-                } else {
-                    // Compute metrics for java files
-                    if (str.endsWith(".java")) {
-                        String[] temp = str.split("\t");
-                        locAdded = Integer.parseInt(temp[0]);
-                        locDeleted = Integer.parseInt(temp[1]);
-                        String fileName = temp[2];
-                        files.add(fileName);
-                        release.updateMetrics(fileName, author, chgSetSize, locAdded, locDeleted);
-                    }
-                }
+    // Hashes only, in the order git log would show them: no diff is computed, so it is cheap to run again whenever
+    // release boundaries move
+    private static List<String> listCommits(Project project, String... range) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(Arrays.asList("git", "rev-list", NO_MERGES));
+        command.addAll(Arrays.asList(range));
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.directory(new File(project.getProjectName()));
+        String output = run(pb);
+        List<String> hashes = new ArrayList<>();
+        for (String line : output.split("\n"))
+            if (!line.isEmpty())
+                // Boundary commits come with a leading dash
+                hashes.add(line.charAt(0) == '-' ? line.substring(1) : line);
+        return hashes;
+    }
+
+    private static String getFirstCommit(Project project) throws IOException, InterruptedException {
+        ProcessBuilder pb = new ProcessBuilder("git", "rev-list", "--reverse", "HEAD");
+        pb.directory(new File(project.getProjectName()));
+        String output = run(pb);
+        return output.substring(0, output.indexOf('\n'));
+    }
+
+    // Runs a single git log over every commit of the ranges that the store does not know yet
+    private static void readMissingCommits(Project project, CommitStore store, List<List<String>> ranges)
+            throws IOException, InterruptedException {
+        Set<String> missing = new LinkedHashSet<>();
+        for (List<String> range : ranges)
+            for (String hash : range)
+                if (!store.contains(hash))
+                    missing.add(hash);
+        if (missing.isEmpty())
+            return;
+        logger.log(Level.INFO, "Reading {0} new commits of {1}", new Object[]{missing.size(),
+                project.getProjectName()});
+        ProcessBuilder pb = new ProcessBuilder("git", NP, "log", "--stdin", "--no-walk=unsorted", NUMSTAT,
+                STATS_FORMAT);
+        pb.directory(new File(project.getProjectName()));
+        long start = System.nanoTime();
+        Process pr = pb.start();
+        // Git reads every revision before writing anything, so the hashes can all go in first
+        try (Writer in = new OutputStreamWriter(pr.getOutputStream(), StandardCharsets.UTF_8)) {
+            for (String hash : missing)
+                in.write(hash + "\n");
+        }
+        CountingInputStream counter = new CountingInputStream(pr.getInputStream());
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(counter, StandardCharsets.UTF_8))) {
+            parseCommits(out, store);
+        }
+        int exitCode = pr.waitFor();
+        Instrumentation.gitProcess("log", counter.getByteCount(), System.nanoTime() - start);
+        // Whatever was read is fine to keep
+        store.flush();
+        if (exitCode != 0)
+            throw new IOException("git log exited with " + exitCode + " reading the commits of " +
+                    project.getProjectName());
+        for (String hash : missing)
+            if (!store.contains(hash))
+                throw new IOException("git log did not return commit " + hash + " of " + project.getProjectName());
+    }
+
+    // Package visible, as are the ones below, for the benchmarks module
+    static void parseCommits(BufferedReader reader, CommitStore store) throws IOException {
+        String[] header = null;
+        List<String> files = new ArrayList<>();
+        List<Integer> added = new ArrayList<>();
+        List<Integer> deleted = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty())
+                continue;
+            if (line.charAt(0) == '\0') {
+                // Add previous commit
+                if (header != null)
+                    addToStore(store, header, files, added, deleted);
+                header = line.substring(1).split("\0", -1);
+                files.clear();
+                added.clear();
+                deleted.clear();
+            } else {
+                String[] temp = line.split("\t");
+                // Binary files have no line counts, -1 stands for them
+                added.add("-".equals(temp[0]) ? -1 : Integer.parseInt(temp[0]));
+                deleted.add("-".equals(temp[1]) ? -1 : Integer.parseInt(temp[1]));
+                files.add(temp[2]);
             }
         }
         // Add last commit
-        addCommitIfNotEmpty(release, new Commit(hash, author, subject, files));
+        if (header != null)
+            addToStore(store, header, files, added, deleted);
     }
 
-    public static void parseDroppedLines(String output, Release release) {
-        String[] lines = output.split("\n");
-        String hash = null;
-        String author = null;
-        String subject = null;
+    private static void addToStore(CommitStore store, String[] header, List<String> files, List<Integer> added,
+                                   List<Integer> deleted) throws IOException {
+        int[] addedLines = new int[added.size()];
+        int[] deletedLines = new int[deleted.size()];
+        for (int i = 0; i < addedLines.length; i++) {
+            addedLines[i] = added.get(i);
+            deletedLines[i] = deleted.get(i);
+        }
+        store.add(header[0], header[1], header[2], files, addedLines, deletedLines);
+    }
+
+    static void addCommit(CommitStore store, Release release, CommitStore.Entry entry, boolean metrics) {
         List<String> files = new ArrayList<>();
-        for (String str : lines) {
-            if (!str.isEmpty()) {
-                if (str.charAt(0) == '$') {
-                    // Add previous commit
-                    if (hash != null) {
-                        addCommitIfNotEmpty(release, new Commit(hash, author, subject, files));
-                        files = new ArrayList<>();
-                    }
+        int chgSetSize = entry.getNumFiles() - 1; // Files committed together with C
+        for (int i = 0; i < entry.getNumFiles(); i++) {
+            String fileName = store.getPath(entry.getFileId(i));
+            // Compute metrics for java files
+            if (fileName.endsWith(".java")) {
+                files.add(fileName);
+                // Binary ones have no line counts to add
+                if (metrics && entry.getAdded(i) >= 0)
+                    release.updateMetrics(fileName, entry.getAuthor(), chgSetSize, entry.getAdded(i),
+                            entry.getDeleted(i));
+            }
+        }
+        addCommitIfNotEmpty(release, new Commit(entry.getHash(), entry.getAuthor(), entry.getIssueKeys(), files));
+    }
 
-                    String[] values = str.substring(1).split("\\$");
-                    hash = values[0];
-                    author = values[1];
-                    subject = values[2];
-                } else {
-                    // Compute metrics for java files
-                    if (str.endsWith(".java")) {
-                        String[] temp = str.split("\t");
-                        String fileName = temp[2];
-                        files.add(fileName);
-                    }
+    // A resident store stays open, and indexed, for the next build of the project. It is then shared with scoring,
+    // so it is used under its own lock
+    private static CommitStore openStore(Project project) throws IOException {
+        ResidentState state = ResidentState.of(project);
+        return state != null ? state.getCommitStore() : CommitStore.open(project);
+    }
+
+    private static void releaseStore(Project project, CommitStore store) throws IOException {
+        if (ResidentState.of(project) != null)
+            store.flush();
+        else
+            store.close();
+    }
+
+    // Ranges are listed first and their commits read from git only if new, metrics are then computed in memory
+    private static void addCommits(Project project, List<Release> releases, List<List<String>> ranges,
+                                   boolean metrics) throws IOException, InterruptedException {
+        CommitStore store = openStore(project);
+        try {
+            synchronized (store) {
+                readMissingCommits(project, store, ranges);
+                for (int i = 0; i < releases.size(); i++) {
+                    for (String hash : ranges.get(i))
+                        addCommit(store, releases.get(i), store.get(hash), metrics);
+                    Instrumentation.count(Instrumentation.COMMITS, ranges.get(i).size());
                 }
             }
+        } finally {
+            releaseStore(project, store);
         }
-        // Add last commit
-        addCommitIfNotEmpty(release, new Commit(hash, author, subject, files));
     }
 
-    public static void getReleaseCommitRelatedMetrics(Project project, Release... releases)
+    // Hash of the commit a revision points to, null when there is no such commit
+    public static String resolve(Project project, String revision) throws IOException, InterruptedException {
+        // Never taken for an option
+        if (revision.isEmpty() || revision.charAt(0) == '-')
+            return null;
+        ProcessBuilder pb = new ProcessBuilder("git", "rev-parse", "--verify", "--quiet", revision + "^{commit}");
+        pb.directory(new File(project.getProjectName()));
+        String output = run(pb).trim();
+        return output.isEmpty() ? null : output;
+    }
+
+    public static LocalDate getCommitDate(Project project, String revision) throws IOException, InterruptedException {
+        ProcessBuilder pb = new ProcessBuilder("git", "log", "-1", DATE_FORMAT, revision);
+        pb.directory(new File(project.getProjectName()));
+        return LocalDate.parse(run(pb).trim());
+    }
+
+    // Whether the commit the ancestor points to is reachable from the revision
+    private static boolean isAncestor(Project project, String ancestor, String revision)
             throws IOException, InterruptedException {
-        String projectName = project.getProjectName();
-        File file = new File(projectName);
-        ProcessBuilder pb = new ProcessBuilder();
-        pb.directory(file);
-        if (releases.length == 1) {
-            // Get first commit
-            pb.command("git", NP, "log", "--reverse");
-            Process pr = pb.start();
-            String output = IOUtils.toString(pr.getInputStream(), StandardCharsets.UTF_8);
-            pr.waitFor();
-            String firstCommit = output.substring("commit ".length(), output.indexOf("\n"));
-            pb.command("git", NP, "log", "--boundary", NUMSTAT, NO_MERGES, COMMIT_FORMAT,
-                    firstCommit + ".." + MessageFormat.format(project.getReleaseString(), releases[0].getName()));
-        } else if (releases.length == 2) {
-            pb.command("git", NP, "log", NUMSTAT, NO_MERGES, COMMIT_FORMAT,
-                    MessageFormat.format(project.getReleaseString(), releases[0].getName()) + ".." +
-                            MessageFormat.format(project.getReleaseString(), releases[1].getName()));
+        ProcessBuilder pb = new ProcessBuilder("git", "merge-base", "--is-ancestor", ancestor, revision);
+        pb.directory(new File(project.getProjectName()));
+        long start = System.nanoTime();
+        int exitCode = pb.start().waitFor();
+        Instrumentation.gitProcess("merge-base", 0, System.nanoTime() - start);
+        // One is a plain no, anything else an error such as an unknown tag
+        if (exitCode > 1)
+            throw new IOException("git merge-base exited with " + exitCode + " for " + ancestor + " in " +
+                    project.getProjectName());
+        return exitCode == 0;
+    }
+
+    // Release at a revision past the base one, as scoring needs it. As for any other release, its commit related
+    // metrics come from the commits since the release before it: the latest of the later ones, oldest first, that the
+    // revision contains, or the base one. The files of the base release are carried over to that release, resized,
+    // added and removed by the commits in between, then to the revision by the commits of its own. No checkout and no
+    // git process per file, only the commits missing from the store are read. Fixes are the commits mentioning one of
+    // the bugs given.
+    static Release releaseAt(Project project, Release base, List<Release> later, String revision,
+                             Set<String> bugKeys) throws IOException, InterruptedException {
+        Release previous = base;
+        for (int i = later.size() - 1; i >= 0 && previous == base; i--)
+            if (isAncestor(project, tagOf(project, later.get(i)), revision))
+                previous = later.get(i);
+        List<String> carried = previous != base ?
+                listCommits(project, tagOf(project, base) + ".." + tagOf(project, previous)) :
+                Collections.<String>emptyList();
+        List<String> hashes = listCommits(project, tagOf(project, previous) + ".." + revision);
+        LocalDate date = getCommitDate(project, revision);
+        Release release = new Release(revision, date, date);
+        CommitStore store = openStore(project);
+        try {
+            synchronized (store) {
+                readMissingCommits(project, store, Arrays.asList(carried, hashes));
+                // Sizes first, as a file gets its metrics with its size
+                Map<String, Long> sizes = new HashMap<>();
+                for (Map.Entry<String, Metrics> entry : base.getFiles().entrySet())
+                    sizes.put(entry.getKey(), entry.getValue().getLoc());
+                Set<String> touched = new HashSet<>();
+                // Files created since the base release count as created at the release they first show up in
+                Map<String, LocalDate> created = new HashMap<>();
+                resize(store, carried, sizes, touched, created, previous.getGitReleaseDate());
+                resize(store, hashes, sizes, touched, created, date);
+                for (Map.Entry<String, Long> entry : sizes.entrySet()) {
+                    Metrics metrics = base.getFiles().get(entry.getKey());
+                    // Deleted in between
+                    if (entry.getValue() <= 0 && touched.contains(entry.getKey()))
+                        continue;
+                    release.addFile(entry.getKey(), entry.getValue(), metrics != null ?
+                            base.getGitReleaseDate().minusWeeks(metrics.getAge()) : created.get(entry.getKey()));
+                }
+                for (String hash : hashes)
+                    addCommit(store, release, store.get(hash), true);
+            }
+        } finally {
+            releaseStore(project, store);
         }
-        Process pr = pb.start();
-        String output = IOUtils.toString(pr.getInputStream(), StandardCharsets.UTF_8);
-        pr.waitFor();
-        if (releases.length == 1) {
-            parseMainLines(output, releases[0]);
-        } else if (releases.length == 2) {
-            parseMainLines(output, releases[1]);
+        for (Commit commit : release.getCommits())
+            for (String issueKey : commit.getIssueKeys())
+                if (bugKeys.contains(issueKey))
+                    for (String file : commit.getFiles())
+                        release.increaseFixes(file);
+        return release;
+    }
+
+    private static void resize(CommitStore store, List<String> hashes, Map<String, Long> sizes, Set<String> touched,
+                               Map<String, LocalDate> created, LocalDate date) {
+        for (String hash : hashes) {
+            CommitStore.Entry entry = store.get(hash);
+            for (int i = 0; i < entry.getNumFiles(); i++) {
+                String fileName = store.getPath(entry.getFileId(i));
+                if (fileName.endsWith(".java") && entry.getAdded(i) >= 0) {
+                    sizes.merge(fileName, (long) entry.getAdded(i) - entry.getDeleted(i), Long::sum);
+                    touched.add(fileName);
+                    created.putIfAbsent(fileName, date);
+                }
+            }
         }
     }
 
-    public static void getReleaseCommits(Project project, Release first, Release second)
+    // Every commit up to the revision, oldest first, handed over one at a time as git writes it: a single process and
+    // nothing kept in between, however long the history
+    public static void streamCommits(Project project, String revision, CommitVisitor visitor)
             throws IOException, InterruptedException {
-        String projectName = project.getProjectName();
-        File file = new File(projectName);
-        ProcessBuilder pb = new ProcessBuilder();
-        pb.directory(file);
-        pb.command("git", NP, "log", NUMSTAT, NO_MERGES, COMMIT_FORMAT,
-                MessageFormat.format(project.getReleaseString(), first.getName()) + ".." +
-                        MessageFormat.format(project.getReleaseString(), second.getName()));
+        // A renamed file starts a new history, as it would in a release
+        ProcessBuilder pb = new ProcessBuilder("git", NP, "log", "--reverse", NO_MERGES, "--no-renames", NUMSTAT,
+                TIMED_FORMAT, revision);
+        pb.directory(new File(project.getProjectName()));
+        long start = System.nanoTime();
         Process pr = pb.start();
-        String output = IOUtils.toString(pr.getInputStream(), StandardCharsets.UTF_8);
+        CountingInputStream counter = new CountingInputStream(pr.getInputStream());
+        long commits = 0;
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(counter, StandardCharsets.UTF_8))) {
+            String[] header = null;
+            List<String> files = new ArrayList<>();
+            List<Integer> added = new ArrayList<>();
+            List<Integer> deleted = new ArrayList<>();
+            String line;
+            while (true) {
+                line = out.readLine();
+                if (line != null && line.isEmpty())
+                    continue;
+                if (line == null || line.charAt(0) == '\0') {
+                    if (header != null) {
+                        int[] addedLines = new int[added.size()];
+                        int[] deletedLines = new int[deleted.size()];
+                        for (int i = 0; i < addedLines.length; i++) {
+                            addedLines[i] = added.get(i);
+                            deletedLines[i] = deleted.get(i);
+                        }
+                        visitor.visit(header[0], header[1], Long.parseLong(header[2]), header[3], files, addedLines,
+                                deletedLines);
+                        commits++;
+                    }
+                    if (line == null)
+                        break;
+                    header = line.substring(1).split("\0", -1);
+                    files.clear();
+                    added.clear();
+                    deleted.clear();
+                } else {
+                    String[] temp = line.split("\t");
+                    // Binary files have no line counts
+                    added.add("-".equals(temp[0]) ? -1 : Integer.parseInt(temp[0]));
+                    deleted.add("-".equals(temp[1]) ? -1 : Integer.parseInt(temp[1]));
+                    files.add(temp[2]);
+                }
+            }
+        } catch (IOException e) {
+            // Left blocked on a full pipe otherwise
+            pr.destroy();
+            throw e;
+        }
         pr.waitFor();
-        parseDroppedLines(output, second);
+        Instrumentation.gitProcess("log", counter.getByteCount(), System.nanoTime() - start);
+        Instrumentation.count(Instrumentation.COMMITS, commits);
+    }
+
+    // Lines of java files a commit deletes or changes, against its first parent and with no context. Full blob
+    // hashes, so that the version of each file the lines come from is known. Empty for a root commit
+    static String getDeletions(Project project, String hash) throws IOException, InterruptedException {
+        ProcessBuilder pb = new ProcessBuilder("git", NP, "diff", "-U0", "--full-index", "--no-color", "--no-ext-diff",
+                hash + "^", hash, "--", "*.java");
+        pb.directory(new File(project.getProjectName()));
+        return run(pb);
+    }
+
+    // Commit that last touched each line of a file at a revision, as git blame --porcelain gives it
+    static String blame(Project project, String revision, String path) throws IOException, InterruptedException {
+        ProcessBuilder pb = new ProcessBuilder("git", NP, "blame", "--porcelain", revision, "--", path);
+        pb.directory(new File(project.getProjectName()));
+        return run(pb);
     }
 
     public static void getCommitRelatedMetrics(Project project, List<Release> releases)
             throws IOException, InterruptedException {
+        List<List<String>> ranges = new ArrayList<>();
         // Get commits for first release
-        getReleaseCommitRelatedMetrics(project, releases.get(0));
-        for (int i = 1; i < releases.size(); i++) {
-            getReleaseCommitRelatedMetrics(project, releases.get(i - 1), releases.get(i));
-        }
+        ranges.add(listCommits(project, "--boundary", getFirstCommit(project) + ".." +
+                tagOf(project, releases.get(0))));
+        for (int i = 1; i < releases.size(); i++)
+            ranges.add(listCommits(project, tagOf(project, releases.get(i - 1)) + ".." +
+                    tagOf(project, releases.get(i))));
+        addCommits(project, releases, ranges, true);
     }
 
     public static void getCommits(Project project, List<Release> releases, Release lastMain)
             throws IOException, InterruptedException {
+        List<List<String>> ranges = new ArrayList<>();
         // Get commits for first release
-        getReleaseCommits(project, lastMain, releases.get(0));
-        for (int i = 1; i < releases.size(); i++) {
-            getReleaseCommits(project, releases.get(i - 1), releases.get(i));
-        }
+        ranges.add(listCommits(project, tagOf(project, lastMain) + ".." + tagOf(project, releases.get(0))));
+        for (int i = 1; i < releases.size(); i++)
+            ranges.add(listCommits(project, tagOf(project, releases.get(i - 1)) + ".." +
+                    tagOf(project, releases.get(i))));
+        addCommits(project, releases, ranges, false);
+    }
+
+    public interface CommitVisitor {
+        // Files are reused for the next commit, added and deleted lines are -1 for binary files
+        void visit(String hash, String author, long epochSeconds, String subject, List<String> files, int[] added,
+                   int[] deleted) throws IOException;
     }
 
 }
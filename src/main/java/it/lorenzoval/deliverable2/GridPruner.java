@@ -0,0 +1,151 @@
+package it.lorenzoval.deliverable2;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class GridPruner {
+
+    public static final String CSV_HEADER = "dataset,Feature Selection,balancing,classifier,status,last release," +
+            "score,estimated saved ms";
+    private static final Logger logger = Logger.getLogger(GridPruner.class.getName());
+    private final EvaluationSettings.PruningMetric metric;
+    private final double quantile;
+    private final int minSurvivors;
+    private final int warmupFolds;
+    private final Map<String, Configuration> configurations;
+    private int evaluatedFolds;
+
+    public GridPruner(EvaluationSettings settings) {
+        this.metric = settings.getPruningMetric();
+        this.quantile = settings.getPruningQuantile();
+        this.minSurvivors = settings.getPruningMinSurvivors();
+        this.warmupFolds = settings.getPruningWarmupFolds();
+        this.configurations = new LinkedHashMap<>();
+        this.evaluatedFolds = 0;
+    }
+
+    // Quoted as in the results, so that names holding commas neither clash nor break the rows of the report
+    private static String keyOf(String featureSelection, String balancing, String classifier) {
+        StringBuilder key = new StringBuilder();
+        WekaResult.appendText(key, featureSelection);
+        key.append(',');
+        WekaResult.appendText(key, balancing);
+        key.append(',');
+        WekaResult.appendText(key, classifier);
+        return key.toString();
+    }
+
+    private Configuration configurationOf(WekaResult wekaResult) {
+        return this.configurations.computeIfAbsent(keyOf(wekaResult.getFeatureSelection(), wekaResult.getBalancing(),
+                wekaResult.getClassifier()), Configuration::new);
+    }
+
+    public boolean isPruned(WekaResult wekaResult) {
+        Configuration configuration = this.configurations.get(keyOf(wekaResult.getFeatureSelection(),
+                wekaResult.getBalancing(), wekaResult.getClassifier()));
+        return configuration != null && configuration.pruned;
+    }
+
+    public void record(WekaResult wekaResult) {
+        double value = this.metric == EvaluationSettings.PruningMetric.KAPPA ? wekaResult.getKappa() :
+                wekaResult.getAuc();
+        // Folds with no defective file in testing give no AUC, they are no evidence either way
+        if (Double.isNaN(value))
+            return;
+        // Sum and count of the values of each cost sensitivity variant
+        double[] sumAndCount = configurationOf(wekaResult).bySensitivity
+                .computeIfAbsent(wekaResult.getSensitivity(), k -> new double[2]);
+        sumAndCount[0] += value;
+        sumAndCount[1]++;
+    }
+
+    public void recordTime(WekaResult wekaResult, long nanos, int trainingSize) {
+        Configuration configuration = configurationOf(wekaResult);
+        configuration.lastNanos = nanos;
+        configuration.lastTrainingSize = trainingSize;
+    }
+
+    public void skipped(WekaResult wekaResult, int trainingSize) {
+        configurationOf(wekaResult).skipped(trainingSize);
+    }
+
+    public void endFold(int release) {
+        this.evaluatedFolds++;
+        if (this.evaluatedFolds < this.warmupFolds)
+            return;
+        List<Configuration> alive = new ArrayList<>();
+        for (Configuration configuration : this.configurations.values())
+            if (!configuration.pruned && !Double.isNaN(configuration.score()))
+                alive.add(configuration);
+        int keep = Math.max(this.minSurvivors, (int) Math.ceil(alive.size() * (1 - this.quantile)));
+        if (alive.size() <= keep)
+            return;
+        alive.sort(Comparator.comparingDouble(Configuration::score).reversed());
+        for (Configuration configuration : alive.subList(keep, alive.size())) {
+            configuration.pruned = true;
+            configuration.lastRelease = release;
+            configuration.scoreAtPruning = configuration.score();
+            logger.log(Level.INFO, "Pruned {0} after release {1}", new Object[]{configuration.key, release});
+        }
+    }
+
+    public List<String> report(String dataset) {
+        List<String> lines = new ArrayList<>();
+        lines.add(CSV_HEADER);
+        double totalSaved = 0;
+        for (Configuration configuration : this.configurations.values()) {
+            long savedMillis = TimeUnit.NANOSECONDS.toMillis((long) configuration.savedNanos);
+            totalSaved += savedMillis;
+            StringBuilder line = new StringBuilder();
+            WekaResult.appendText(line, dataset);
+            lines.add(line + "," + configuration.key + "," + (configuration.pruned ? "pruned" : "kept") + "," +
+                    (configuration.pruned ? configuration.lastRelease : "") + "," +
+                    (configuration.pruned ? configuration.scoreAtPruning : configuration.score()) + "," + savedMillis);
+        }
+        logger.log(Level.INFO, "Pruning saved about {0} s of evaluation on {1}", new Object[]{totalSaved / 1000,
+                dataset});
+        return lines;
+    }
+
+    private static class Configuration {
+
+        private final String key;
+        private final Map<String, double[]> bySensitivity;
+        private boolean pruned;
+        private int lastRelease;
+        private double scoreAtPruning;
+        private long lastNanos;
+        private int lastTrainingSize;
+        private double savedNanos;
+
+        private Configuration(String key) {
+            this.key = key;
+            this.bySensitivity = new LinkedHashMap<>();
+        }
+
+        private void skipped(int trainingSize) {
+            // Training cost grows about linearly with the training set, scale the last measured time accordingly
+            if (this.lastTrainingSize > 0)
+                this.savedNanos += this.lastNanos * (double) trainingSize / this.lastTrainingSize;
+        }
+
+        // Mean over the evaluated folds of the best cost sensitivity variant
+        private double score() {
+            double best = Double.NaN;
+            for (double[] sumAndCount : this.bySensitivity.values()) {
+                double mean = sumAndCount[0] / sumAndCount[1];
+                if (Double.isNaN(best) || mean > best)
+                    best = mean;
+            }
+            return best;
+        }
+
+    }
+
+}
@@ -0,0 +1,144 @@
+package it.lorenzoval.deliverable2;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.lazy.IBk;
+import weka.classifiers.trees.RandomForest;
+import weka.core.Instances;
+import weka.core.OptionHandler;
+import weka.core.SelectedTag;
+import weka.core.Utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class HyperparameterSearch {
+
+    public static final String CSV_HEADER = "dataset,release,classifier,search,options,validation AUC";
+    private static final Logger logger = Logger.getLogger(HyperparameterSearch.class.getName());
+    private static final int[] NUM_TREES = {100, 50, 200};
+    private static final int[] MAX_DEPTHS = {0, 10, 20};
+    private static final int[] NEIGHBOURS = {1, 3, 5, 10, 20};
+    private static final int[] WEIGHTINGS = {IBk.WEIGHT_NONE, IBk.WEIGHT_INVERSE, IBk.WEIGHT_SIMILARITY};
+    private static final int RANDOM_CANDIDATES = 8;
+    private static final long SEED = 1;
+
+    private HyperparameterSearch() {
+    }
+
+    private static RandomForest randomForest(int numTrees, int maxDepth) {
+        RandomForest randomForest = new RandomForest();
+        randomForest.setNumIterations(numTrees);
+        // 0 is unlimited
+        randomForest.setMaxDepth(maxDepth);
+        return randomForest;
+    }
+
+    private static IBk ibk(EvaluationSettings settings, int neighbours, int weighting) {
+        IBk ibk = new IBk();
+        ibk.setKNN(neighbours);
+        ibk.setDistanceWeighting(new SelectedTag(weighting, IBk.TAGS_WEIGHTING));
+        ibk.setNearestNeighbourSearchAlgorithm(settings.getNeighbourSearch().create());
+        return ibk;
+    }
+
+    private static List<Classifier> gridCandidates(EvaluationSettings settings) {
+        // Defaults come first, so they win ties
+        List<Classifier> candidates = new ArrayList<>();
+        for (int numTrees : NUM_TREES)
+            for (int maxDepth : MAX_DEPTHS)
+                candidates.add(randomForest(numTrees, maxDepth));
+        for (int weighting : WEIGHTINGS)
+            for (int neighbours : NEIGHBOURS)
+                candidates.add(ibk(settings, neighbours, weighting));
+        return candidates;
+    }
+
+    private static List<Classifier> randomCandidates(EvaluationSettings settings) {
+        // Fixed seed, so that the same candidates are drawn for every fold and their results can be cached
+        Random random = new Random(SEED);
+        List<Classifier> candidates = new ArrayList<>();
+        candidates.add(randomForest(NUM_TREES[0], MAX_DEPTHS[0]));
+        candidates.add(ibk(settings, NEIGHBOURS[0], WEIGHTINGS[0]));
+        for (int i = 0; i < RANDOM_CANDIDATES; i++) {
+            candidates.add(randomForest(10 + random.nextInt(291), random.nextInt(31)));
+            candidates.add(ibk(settings, 1 + random.nextInt(30), WEIGHTINGS[random.nextInt(WEIGHTINGS.length)]));
+        }
+        return candidates;
+    }
+
+    private static String nameOf(Classifier classifier) {
+        String name = classifier.getClass().getName();
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+
+    private static String optionsOf(Classifier classifier) {
+        return Utils.joinOptions(((OptionHandler) classifier).getOptions());
+    }
+
+    private static double score(EvaluationContext context, Classifier candidate, Instances training,
+                                Instances validation, String foldKey) throws Exception {
+        String key = DatasetFingerprint.combine(foldKey, candidate.getClass().getName(), optionsOf(candidate));
+        Double auc = (Double) context.getCache().get(key);
+        if (auc == null) {
+            Classifier model = AbstractClassifier.makeCopy(candidate);
+            model.buildClassifier(training);
+            auc = Predictions.of(model, validation).evaluate().areaUnderROC(0);
+            context.getCache().put(key, auc);
+        }
+        return auc;
+    }
+
+    // Candidates are trained on the earlier releases of the training set and validated on its last release, that is
+    // on the previous walk-forward fold, so the testing release of the current fold is never looked at
+    public static Map<String, Classifier> search(EvaluationContext context, String dataset, int release,
+                                                 Instances training, Instances validation) throws Exception {
+        EvaluationSettings settings = context.getSettings();
+        List<Classifier> candidates = settings.getHyperparameterSearch() == EvaluationSettings.Search.GRID ?
+                gridCandidates(settings) : randomCandidates(settings);
+
+        String foldKey = DatasetFingerprint.combine(DatasetFingerprint.of(training), DatasetFingerprint.of(validation),
+                DatasetFingerprint.domainsOf(training), "hyperparameter");
+        List<Callable<Double>> jobs = new ArrayList<>();
+        for (Classifier candidate : candidates)
+            jobs.add(() -> score(context, candidate, training, validation, foldKey));
+        ExecutorService pool = Executors.newFixedThreadPool(settings.getThreads());
+        List<Future<Double>> scores;
+        try {
+            scores = pool.invokeAll(jobs);
+        } finally {
+            pool.shutdown();
+        }
+
+        Map<String, Classifier> best = new HashMap<>();
+        Map<String, Double> bestScores = new HashMap<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            double auc = scores.get(i).get();
+            String name = nameOf(candidates.get(i));
+            // A validation release without defects gives no AUC, leaving the defaults in place
+            if (!Double.isNaN(auc) && (!bestScores.containsKey(name) || auc > bestScores.get(name))) {
+                best.put(name, candidates.get(i));
+                bestScores.put(name, auc);
+            }
+        }
+
+        for (Map.Entry<String, Classifier> entry : best.entrySet()) {
+            String options = optionsOf(entry.getValue());
+            logger.log(Level.INFO, "Best {0} for release {1}: {2}", new Object[]{entry.getKey(), release, options});
+            context.getHyperparameterLines().add(dataset + "," + release + "," + entry.getKey() + "," +
+                    settings.getHyperparameterSearch() + ",\"" + options.replace("\"", "\"\"") + "\"," +
+                    bestScores.get(entry.getKey()));
+        }
+        return best;
+    }
+
+}
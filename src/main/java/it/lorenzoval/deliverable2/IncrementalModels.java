@@ -0,0 +1,53 @@
+package it.lorenzoval.deliverable2;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.UpdateableClassifier;
+import weka.core.Instances;
+import weka.core.OptionHandler;
+import weka.core.Utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class IncrementalModels {
+
+    private final Map<String, Classifier> models;
+    private final Map<String, Integer> seen;
+
+    public IncrementalModels() {
+        this.models = new HashMap<>();
+        this.seen = new HashMap<>();
+    }
+
+    private static String keyOf(Classifier classifier) {
+        String options = classifier instanceof OptionHandler ?
+                Utils.joinOptions(((OptionHandler) classifier).getOptions()) : "";
+        return classifier.getClass().getName() + " " + options;
+    }
+
+    // Training sets must grow by appending from one call to the next, as walk-forward folds do: an updateable model
+    // kept from the previous fold is only fed the new tail instead of being trained again on the whole set.
+    // The returned model belongs to this object, callers must not train it.
+    public Classifier train(Classifier classifier, Instances trainingSet) throws Exception {
+        if (!(classifier instanceof UpdateableClassifier)) {
+            classifier.buildClassifier(trainingSet);
+            return classifier;
+        }
+        String key = keyOf(classifier);
+        Classifier model = this.models.get(key);
+        int from = model != null ? this.seen.get(key) : 0;
+        if (model == null || from > trainingSet.size()) {
+            model = AbstractClassifier.makeCopy(classifier);
+            model.buildClassifier(trainingSet);
+            this.models.put(key, model);
+        } else {
+            UpdateableClassifier updateable = (UpdateableClassifier) model;
+            for (int i = from; i < trainingSet.size(); i++)
+                updateable.updateClassifier(trainingSet.get(i));
+        }
+        this.seen.put(key, trainingSet.size());
+        return model;
+    }
+
+}
@@ -0,0 +1,281 @@
+package it.lorenzoval.deliverable2;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import org.apache.commons.io.FileUtils;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Where the time of a run goes: counters and timers for the JSON run report, plus JFR events for recordings started
+// with -XX:StartFlightRecording, which cost next to nothing when no recording is running
+public class Instrumentation {
+
+    public static final String GIT_PROCESSES = "gitProcesses";
+    public static final String GIT_BYTES = "gitBytes";
+    public static final String HTTP_PAGES = "httpPages";
+    public static final String HTTP_BYTES = "httpBytes";
+    public static final String COMMITS = "commits";
+    public static final String FILES = "files";
+    public static final String ISSUES = "issues";
+    public static final String BUGS = "bugs";
+    public static final String CELLS = "cells";
+    public static final String CACHED_CELLS = "cachedCells";
+    public static final String SCORED_FILES = "scoredFiles";
+    // Latest requests each scoring timer keeps for its percentiles
+    private static final int LATENCY_SAMPLES = 4096;
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private static final Instant started = Instant.now();
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final Map<String, Map<String, Timer>> timers = new ConcurrentHashMap<>();
+
+    private Instrumentation() {
+    }
+
+    private static long cpuTime() {
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : 0;
+    }
+
+    private static Timer timer(String group, String name) {
+        return timers.computeIfAbsent(group, k -> new ConcurrentHashMap<>()).computeIfAbsent(name, k -> new Timer(0));
+    }
+
+    public static void count(String counter, long amount) {
+        counters.computeIfAbsent(counter, k -> new LongAdder()).add(amount);
+    }
+
+    // Times the stage of a project until closed. Its CPU time is the calling thread's only, the pools a stage hands
+    // work to are not counted, hence the name it is reported under
+    public static Span stage(Project project, String stage) {
+        return new Span(project.getProjectName(), stage);
+    }
+
+    public static void gitProcess(String command, long bytes, long nanos) {
+        count(GIT_PROCESSES, 1);
+        count(GIT_BYTES, bytes);
+        timer("git", command).add(nanos, 0);
+        GitEvent event = new GitEvent();
+        if (event.shouldCommit()) {
+            event.command = command;
+            event.bytes = bytes;
+            event.durationMillis = nanos / 1000000;
+            event.commit();
+        }
+    }
+
+    public static void httpPage(String url, long bytes, long nanos) {
+        count(HTTP_PAGES, 1);
+        count(HTTP_BYTES, bytes);
+        // Timed per endpoint, query left out
+        int query = url.indexOf('?');
+        timer("http", query > 0 ? url.substring(0, query) : url).add(nanos, 0);
+        HttpEvent event = new HttpEvent();
+        if (event.shouldCommit()) {
+            event.url = url;
+            event.bytes = bytes;
+            event.durationMillis = nanos / 1000000;
+            event.commit();
+        }
+    }
+
+    // Training is zero for cells read back from the cache, and the time the worker reported for cells trained by one
+    public static void cell(String dataset, int release, String configuration, long trainNanos, long evalNanos) {
+        count(CELLS, 1);
+        if (trainNanos == 0)
+            count(CACHED_CELLS, 1);
+        timer("train/" + dataset, configuration).add(trainNanos, 0);
+        timer("eval/" + dataset, configuration).add(evalNanos, 0);
+        CellEvent event = new CellEvent();
+        if (event.shouldCommit()) {
+            event.dataset = dataset;
+            event.release = release;
+            event.configuration = configuration;
+            event.trainMillis = trainNanos / 1000000;
+            event.evalMillis = evalNanos / 1000000;
+            event.commit();
+        }
+    }
+
+    // One scoring request, whose latency percentiles the report gives as well
+    public static void scoring(String project, int files, long nanos) {
+        count(SCORED_FILES, files);
+        timers.computeIfAbsent("score", k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(project, k -> new Timer(LATENCY_SAMPLES)).add(nanos, 0);
+    }
+
+    public static JSONObject report() {
+        JSONObject report = new JSONObject();
+        report.put("started", started.toString());
+        report.put("wallMillis", System.currentTimeMillis() - started.toEpochMilli());
+        JSONObject counterValues = new JSONObject();
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(counters).entrySet())
+            counterValues.put(entry.getKey(), entry.getValue().sum());
+        report.put("counters", counterValues);
+        // Timers are grouped by what they time: stages, git commands, JIRA endpoints, training and evaluation
+        JSONObject groups = new JSONObject();
+        for (Map.Entry<String, Map<String, Timer>> group : new TreeMap<>(timers).entrySet()) {
+            JSONObject groupTimers = new JSONObject();
+            for (Map.Entry<String, Timer> entry : new TreeMap<>(group.getValue()).entrySet())
+                groupTimers.put(entry.getKey(), entry.getValue().toJSON());
+            groups.put(group.getKey(), groupTimers);
+        }
+        report.put("timers", groups);
+        return report;
+    }
+
+    public static void writeReport(File file) throws IOException {
+        FileUtils.writeStringToFile(file, report().toString(2), StandardCharsets.UTF_8);
+    }
+
+    public static class Span implements AutoCloseable {
+
+        private final String project;
+        private final String stage;
+        private final long wallStart;
+        private final long cpuStart;
+        private final StageEvent event;
+
+        private Span(String project, String stage) {
+            this.project = project;
+            this.stage = stage;
+            this.event = new StageEvent();
+            this.event.begin();
+            this.wallStart = System.nanoTime();
+            this.cpuStart = cpuTime();
+        }
+
+        @Override
+        public void close() {
+            long cpu = cpuTime() - this.cpuStart;
+            timer("stage/" + this.project, this.stage).add(System.nanoTime() - this.wallStart, cpu);
+            this.event.end();
+            if (this.event.shouldCommit()) {
+                this.event.project = this.project;
+                this.event.stage = this.stage;
+                this.event.cpuMillis = cpu / 1000000;
+                this.event.commit();
+            }
+        }
+
+    }
+
+    private static class Timer {
+
+        private long count;
+        private long wallNanos;
+        private long cpuNanos;
+        private long maxNanos;
+        // Ring of the latest wall times, only for timers reporting percentiles
+        private final long[] samples;
+
+        private Timer(int samples) {
+            this.samples = new long[samples];
+        }
+
+        private synchronized void add(long wall, long cpu) {
+            if (this.samples.length > 0)
+                this.samples[(int) (this.count % this.samples.length)] = wall;
+            this.count++;
+            this.wallNanos += wall;
+            this.cpuNanos += cpu;
+            this.maxNanos = Math.max(this.maxNanos, wall);
+        }
+
+        private static double percentileMillis(long[] sorted, double percentile) {
+            return sorted[(int) Math.ceil(percentile * sorted.length) - 1] / 1e6;
+        }
+
+        private synchronized JSONObject toJSON() {
+            JSONObject json = new JSONObject();
+            json.put("count", this.count);
+            json.put("wallMillis", this.wallNanos / 1000000);
+            json.put("maxMillis", this.maxNanos / 1000000);
+            if (this.cpuNanos > 0)
+                json.put("callingThreadCpuMillis", this.cpuNanos / 1000000);
+            if (this.samples.length > 0 && this.count > 0) {
+                long[] sorted = Arrays.copyOf(this.samples, (int) Math.min(this.count, this.samples.length));
+                Arrays.sort(sorted);
+                json.put("p50Millis", percentileMillis(sorted, 0.5));
+                json.put("p99Millis", percentileMillis(sorted, 0.99));
+            }
+            return json;
+        }
+
+    }
+
+    @Name("it.lorenzoval.deliverable2.Stage")
+    @Label("Stage")
+    @Category("Deliverable2")
+    static class StageEvent extends Event {
+
+        @Label("Project")
+        String project;
+        @Label("Stage")
+        String stage;
+        @Label("CPU time of the calling thread (ms)")
+        long cpuMillis;
+
+    }
+
+    @Name("it.lorenzoval.deliverable2.Git")
+    @Label("Git process")
+    @Category("Deliverable2")
+    static class GitEvent extends Event {
+
+        @Label("Command")
+        String command;
+        @Label("Output")
+        @DataAmount
+        long bytes;
+        @Label("Duration (ms)")
+        long durationMillis;
+
+    }
+
+    @Name("it.lorenzoval.deliverable2.Http")
+    @Label("JIRA page")
+    @Category("Deliverable2")
+    static class HttpEvent extends Event {
+
+        @Label("URL")
+        String url;
+        @Label("Body")
+        @DataAmount
+        long bytes;
+        @Label("Duration (ms)")
+        long durationMillis;
+
+    }
+
+    @Name("it.lorenzoval.deliverable2.Cell")
+    @Label("Evaluation cell")
+    @Category("Deliverable2")
+    static class CellEvent extends Event {
+
+        @Label("Dataset")
+        String dataset;
+        @Label("Release")
+        int release;
+        @Label("Configuration")
+        String configuration;
+        @Label("Training (ms)")
+        long trainMillis;
+        @Label("Evaluation (ms)")
+        long evalMillis;
+
+    }
+
+}
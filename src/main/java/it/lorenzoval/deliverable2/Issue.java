@@ -1,13 +1,15 @@
 package it.lorenzoval.deliverable2;
 
+import java.io.Serializable;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-public class Issue {
+public class Issue implements Serializable {
 
+    private static final long serialVersionUID = 1L;
     private final String key;
     private final Set<String> affectedFiles;
     private final Release openingVersion;
@@ -63,4 +65,9 @@ public class Issue {
         this.affectedVersions.addAll(affectedVersions);
     }
 
+    public void setAffectedVersions(List<Release> affectedVersions) {
+        this.affectedVersions.clear();
+        this.affectedVersions.addAll(affectedVersions);
+    }
+
 }
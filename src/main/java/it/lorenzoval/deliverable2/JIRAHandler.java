@@ -1,6 +1,7 @@
 package it.lorenzoval.deliverable2;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
@@ -15,21 +16,23 @@ import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class JIRAHandler {
 
-    private static final String BUGS_URL = "https://issues.apache.org/jira/rest/api/2/search?jql=project=%22{0}%22" +
+    private static final String BUGS_URL = "{0}/rest/api/2/search?jql=project=%22{1}%22" +
             "AND%22issueType%22=%22Bug%22AND(%22status%22=%22closed%22OR%22status%22=%22resolved%22)AND" +
-            "%22resolution%22=%22fixed%22&fields=key,resolutiondate,versions,created&startAt={1}&maxResults={2}";
-    private static final String RELEASES_URL = "https://issues.apache.org/jira/rest/api/2/project/{0}";
+            "%22resolution%22=%22fixed%22&fields=key,resolutiondate,versions,created&startAt={2}&maxResults={3}";
+    private static final String RELEASES_URL = "{0}/rest/api/2/project/{1}";
     private static final Logger logger = Logger.getLogger(JIRAHandler.class.getName());
     private static final DateTimeFormatter fromAPIFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
 
     private JIRAHandler() {
     }
 
+    private static InputStream openPage(String url) throws IOException {
+        return new PageStream(url, new URL(url).openStream());
+    }
+
     private static List<Release> jsonArrayToList(ReleasesList releasesList, JSONArray jsonArray) {
         List<Release> releases = new ArrayList<>();
         for (int i = 0; i < jsonArray.length(); i++) {
@@ -42,12 +45,11 @@ public class JIRAHandler {
     }
 
 
-    public static List<Release> updateAffectedFiles(List<Release> releases, Issue bug, Pattern p, boolean dropped) {
+    public static List<Release> updateAffectedFiles(List<Release> releases, Issue bug, boolean dropped) {
         List<Release> releaseList = new ArrayList<>();
         for (Release release : releases) {
             for (Commit commit : release.getCommits()) {
-                Matcher m = p.matcher(commit.getSubject());
-                if (m.find()) {
+                if (commit.mentions(bug.getKey())) {
                     releaseList.add(release);
                     for (String file : commit.getFiles()) {
                         if (!dropped)
@@ -61,12 +63,11 @@ public class JIRAHandler {
     }
 
     public static Release getAffectedFilesAndFixedVersion(ReleasesList releasesList, Issue bug) {
-        Pattern p = Pattern.compile("\\b" + bug.getKey() + "\\b", Pattern.CASE_INSENSITIVE);
         List<Release> fixedVersions = new ArrayList<>();
-        fixedVersions.addAll(updateAffectedFiles(releasesList.getMain(), bug, p, false));
-        fixedVersions.addAll(updateAffectedFiles(releasesList.getDropped(), bug, p, true));
+        fixedVersions.addAll(updateAffectedFiles(releasesList.getMain(), bug, false));
+        fixedVersions.addAll(updateAffectedFiles(releasesList.getDropped(), bug, true));
         if (bug.getAffectedFiles().isEmpty()) {
-            logger.log(Level.INFO, "Issue {0} has no commit associated, discarded", bug.getKey());
+            logger.log(Level.FINE, "Issue {0} has no commit associated, discarded", bug.getKey());
             return null;
         } else {
             return fixedVersions.get(fixedVersions.size() - 1);
@@ -127,26 +128,28 @@ public class JIRAHandler {
             double computedIv;
             lastIssueId = getLastIssueId(bug, proportionList, lastIssueId);
             double p = computeP(proportionList, movingWindowSize, lastIssueId);
-            logger.log(Level.INFO, "Computed p {0}", p);
+            if (logger.isLoggable(Level.FINE))
+                logger.log(Level.FINE, "Computed p {0} for {1}", new Object[]{p, bug.getKey()});
             computedIv = fv - (fv - ov) * p;
             bug.addAffectedVersions(releasesList.getReleasesBetween(computedIv, bug.getFixedVersion().getId()));
         }
     }
 
-    public static List<Issue> getBugs(Project project, ReleasesList releasesList) throws IOException {
+    // Network and JSON decoding only: reads nothing but names and dates of the releases, so it can run while git
+    // mining is filling them with files and commits
+    public static List<FetchedBug> fetchBugs(Project project, ReleasesList releasesList) throws IOException {
         int i = 0;
         int j;
         int total;
         String url;
-        List<Issue> bugs = new ArrayList<>();
-        List<Issue> proportionList = new ArrayList<>();
+        List<FetchedBug> fetched = new ArrayList<>();
 
         do {
             j = i + 1000;
-            url = MessageFormat.format(BUGS_URL, project.getProjectName().toUpperCase(Locale.ROOT), Integer.toString(i),
-                    Integer.toString(j));
+            url = MessageFormat.format(BUGS_URL, project.getJiraUrl(),
+                    project.getProjectName().toUpperCase(Locale.ROOT), Integer.toString(i), Integer.toString(j));
 
-            try (InputStream in = new URL(url).openStream()) {
+            try (InputStream in = openPage(url)) {
                 JSONObject json = new JSONObject(IOUtils.toString(in, StandardCharsets.UTF_8));
                 JSONArray issues = json.getJSONArray("issues");
                 total = json.getInt("total");
@@ -160,37 +163,70 @@ public class JIRAHandler {
                             .parse(jsonObject2.getString("created"), fromAPIFormatter));
                     OffsetDateTime resolutionDate = OffsetDateTime
                             .parse(jsonObject2.getString("resolutiondate"), fromAPIFormatter);
-                    Issue bug = new Issue(key, openingVersion, resolutionDate);
-                    Release fixedVersion = getAffectedFilesAndFixedVersion(releasesList, bug);
-                    if (fixedVersion == null)
-                        // Do not add issues with no commit associated
-                        continue;
-                    else
-                        bug.setFixedVersion(fixedVersion);
-                    if (jsonArray1.length() == 0) {
-                        bugs.add(bug);
-                    } else {
-                        parseVersionsArray(releasesList, bugs, bug, proportionList, jsonArray1);
-                    }
+                    fetched.add(new FetchedBug(new Issue(key, openingVersion, resolutionDate), jsonArray1));
                 }
 
             }
 
         } while (i < total);
 
+        Instrumentation.count(Instrumentation.ISSUES, fetched.size());
+        return fetched;
+    }
+
+    // Changes whenever the issues linking would read do: their keys, opening versions, resolution dates and declared
+    // affected versions
+    public static String fingerprint(List<FetchedBug> fetched) {
+        List<String> parts = new ArrayList<>();
+        for (FetchedBug fetchedBug : fetched) {
+            parts.add(fetchedBug.bug.getKey());
+            Release openingVersion = fetchedBug.bug.getOpeningVersion();
+            parts.add(openingVersion != null ? openingVersion.getName() : "");
+            parts.add(fetchedBug.bug.getResolutionDate().toString());
+            parts.add(fetchedBug.versions.toString());
+        }
+        return DatasetFingerprint.combine(parts.toArray(new String[0]));
+    }
+
+    // Needs the commits of every release, so only once git mining is done
+    public static List<Issue> linkBugs(Project project, ReleasesList releasesList, List<FetchedBug> fetched) {
+        List<Issue> bugs = new ArrayList<>();
+        List<Issue> proportionList = new ArrayList<>();
+
+        for (FetchedBug fetchedBug : fetched) {
+            Issue bug = fetchedBug.bug;
+            Release fixedVersion = getAffectedFilesAndFixedVersion(releasesList, bug);
+            if (fixedVersion == null)
+                // Do not add issues with no commit associated
+                continue;
+            else
+                bug.setFixedVersion(fixedVersion);
+            if (fetchedBug.versions.length() == 0) {
+                bugs.add(bug);
+            } else {
+                parseVersionsArray(releasesList, bugs, bug, proportionList, fetchedBug.versions);
+            }
+        }
+
         proportion(releasesList, bugs, proportionList, project.getMovingWindow());
 
+        Instrumentation.count(Instrumentation.BUGS, bugs.size());
         return bugs;
     }
 
+    public static List<Issue> getBugs(Project project, ReleasesList releasesList) throws IOException {
+        return linkBugs(project, releasesList, fetchBugs(project, releasesList));
+    }
+
     public static List<Release> getReleases(Project project) throws IOException, InterruptedException {
         String url;
         List<Release> releases = new ArrayList<>();
-        url = MessageFormat.format(RELEASES_URL, project.getProjectName().toUpperCase(Locale.ROOT));
+        url = MessageFormat.format(RELEASES_URL, project.getJiraUrl(),
+                project.getProjectName().toUpperCase(Locale.ROOT));
         final String rd = "releaseDate";
         final String n = "name";
 
-        try (InputStream in = new URL(url).openStream()) {
+        try (InputStream in = openPage(url)) {
             JSONObject json = new JSONObject(IOUtils.toString(in, StandardCharsets.UTF_8));
             JSONArray versions = json.getJSONArray("versions");
 
@@ -218,4 +254,37 @@ public class JIRAHandler {
         return releases;
     }
 
+    // Issue as read from JIRA, with the affected versions it declares still to be checked against its commits
+    public static class FetchedBug {
+
+        private final Issue bug;
+        private final JSONArray versions;
+
+        private FetchedBug(Issue bug, JSONArray versions) {
+            this.bug = bug;
+            this.versions = versions;
+        }
+
+    }
+
+    // Reports the page to the run report once it has been read and closed
+    private static class PageStream extends CountingInputStream {
+
+        private final String url;
+        private final long start;
+
+        private PageStream(String url, InputStream in) {
+            super(in);
+            this.url = url;
+            this.start = System.nanoTime();
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            Instrumentation.httpPage(this.url, getByteCount(), System.nanoTime() - this.start);
+        }
+
+    }
+
 }
@@ -0,0 +1,253 @@
+package it.lorenzoval.deliverable2;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Commit level, just in time, dataset of a project: one row per commit touching java files, with the features of the
+// change and of the history of its files and author up to it, labelled as bug inducing or not. Commits are streamed
+// from a single git log, oldest first, through rolling state that grows with files and authors but not with commits,
+// and rows are written as they come. A commit is only known to induce a bug once the fix is seen, later in the
+// stream: inducing commits are collected as hashes, and the rows labelled with a last sequential pass
+public class JitDataset {
+
+    public static final String CSV_HEADER = "Version,Commit,NS,ND,NF,Entropy,LA,LD,LT,NDEV,Age,NUC,EXP,REXP,SEXP," +
+            "Fix,Buggy";
+    private static final Logger logger = Logger.getLogger(JitDataset.class.getName());
+    private static final long SECONDS_PER_DAY = 86400;
+    private static final long SECONDS_PER_YEAR = 365 * SECONDS_PER_DAY;
+    private final Map<String, FileHistory> files;
+    private final Map<String, AuthorHistory> authors;
+    // Start of the injected version of each bug, in epoch seconds: fixes only blame changes made since
+    private final Map<String, Long> bugs;
+    // Git release dates in epoch seconds, a commit belongs to the first release not before it
+    private final long[] releaseDates;
+    private final Set<String> inducing;
+    private final BufferedWriter out;
+    private long rows;
+
+    private JitDataset(Map<String, Long> bugs, long[] releaseDates, BufferedWriter out) {
+        this.files = new HashMap<>();
+        this.authors = new HashMap<>();
+        this.bugs = bugs;
+        this.releaseDates = releaseDates;
+        this.inducing = new HashSet<>();
+        this.out = out;
+        this.rows = 0;
+    }
+
+    public static File forProject(Project project) {
+        return new File(project.getProjectName() + "_jit.csv");
+    }
+
+    private static long epochSeconds(LocalDate date) {
+        return date.atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+    }
+
+    // Releases and bugs come from the labelled history of the dataset, which must be up to date
+    public static void build(Project project, String datasetKey) throws IOException, InterruptedException {
+        StageCheckpoints checkpoints = StageCheckpoints.forProject(project);
+        String head = GitHandler.resolve(project, "HEAD");
+        String key = DatasetFingerprint.combine(datasetKey, head, StageCheckpoints.Stage.COMMIT_DATASET.name());
+        File file = forProject(project);
+        if (checkpoints.isValid(StageCheckpoints.Stage.COMMIT_DATASET, key) && file.isFile()) {
+            logger.log(Level.INFO, "Commit dataset of {0} is up to date", project.getProjectName());
+            return;
+        }
+        StageCheckpoints.Snapshot history = Deliverable2.loadHistory(project);
+        if (history == null)
+            throw new IllegalStateException("No labelled history for " + project.getProjectName() +
+                    ", its dataset has to be built first");
+
+        List<Release> releases = new ArrayList<>(history.getReleasesList().getMain());
+        releases.addAll(history.getReleasesList().getDropped());
+        long[] releaseDates = new long[releases.size()];
+        for (int i = 0; i < releaseDates.length; i++)
+            // Commits of the release day belong to it
+            releaseDates[i] = epochSeconds(releases.get(i).getGitReleaseDate().plusDays(1));
+        Map<String, Long> bugs = new HashMap<>();
+        for (Issue bug : history.getBugs()) {
+            long since = 0;
+            if (!bug.getAffectedVersions().isEmpty()) {
+                int injected = releases.indexOf(bug.getInjectedVersion());
+                if (injected > 0)
+                    since = releaseDates[injected - 1];
+            }
+            bugs.put(bug.getKey().toUpperCase(Locale.ROOT), since);
+        }
+
+        File unlabelled = new File(file.getPath() + ".tmp");
+        JitDataset dataset;
+        try (BufferedWriter writer = Files.newBufferedWriter(unlabelled.toPath(), StandardCharsets.UTF_8)) {
+            dataset = new JitDataset(bugs, releaseDates, writer);
+            try (Instrumentation.Span span = Instrumentation.stage(project, "commitDataset")) {
+                GitHandler.streamCommits(project, head, dataset::add);
+            }
+        }
+        dataset.label(unlabelled, file);
+        Files.delete(unlabelled.toPath());
+        logger.log(Level.INFO, "Commit dataset of {0}: {1} commits, {2} inducing",
+                new Object[]{project.getProjectName(), dataset.rows, dataset.inducing.size()});
+        checkpoints.save(StageCheckpoints.Stage.COMMIT_DATASET, key, null);
+    }
+
+    // Last change to every file of a fix, if made since the bug was injected, induced it
+    private void blame(List<FileHistory> touched, long since) {
+        for (FileHistory history : touched)
+            if (history != null && history.lastHash != null && history.lastChange >= since)
+                this.inducing.add(history.lastHash);
+    }
+
+    private int version(long epochSeconds) {
+        int version = 0;
+        while (version < this.releaseDates.length && this.releaseDates[version] <= epochSeconds)
+            version++;
+        // Ids start from one, commits after the last release get the next one
+        return version + 1;
+    }
+
+    private void add(String hash, String author, long epochSeconds, String subject, List<String> changed,
+                     int[] added, int[] deleted) throws IOException {
+        // Its name as first seen, so that file histories share a single copy of it
+        AuthorHistory experience = this.authors.computeIfAbsent(author, AuthorHistory::new);
+        List<String> paths = new ArrayList<>();
+        List<FileHistory> touched = new ArrayList<>();
+        Set<String> subsystems = new HashSet<>();
+        Set<String> directories = new HashSet<>();
+        Set<String> developers = new HashSet<>();
+        Set<String> lastChanges = new HashSet<>();
+        int la = 0;
+        int ld = 0;
+        long lt = 0;
+        double ageDays = 0;
+        for (int i = 0; i < changed.size(); i++) {
+            String path = changed.get(i);
+            if (!path.endsWith(".java") || added[i] < 0)
+                continue;
+            paths.add(path);
+            int slash = path.indexOf('/');
+            subsystems.add(slash > 0 ? path.substring(0, slash) : "");
+            directories.add(path.lastIndexOf('/') > 0 ? path.substring(0, path.lastIndexOf('/')) : "");
+            la += added[i];
+            ld += deleted[i];
+            FileHistory history = this.files.get(path);
+            touched.add(history);
+            if (history != null) {
+                lt += history.lines;
+                developers.addAll(history.developers);
+                lastChanges.add(history.lastHash);
+                ageDays += (double) (epochSeconds - history.lastChange) / SECONDS_PER_DAY;
+            }
+        }
+        if (paths.isEmpty())
+            return;
+        // Spread of the change over its files, normalised by the largest it could be
+        double entropy = 0;
+        int modified = la + ld;
+        for (int i = 0; i < changed.size(); i++) {
+            if (!changed.get(i).endsWith(".java") || added[i] < 0)
+                continue;
+            double p = modified > 0 ? (double) (added[i] + deleted[i]) / modified : 0;
+            if (p > 0)
+                entropy -= p * Math.log(p) / Math.log(2);
+        }
+        if (paths.size() > 1)
+            entropy /= Math.log(paths.size()) / Math.log(2);
+
+        int year = (int) (epochSeconds / SECONDS_PER_YEAR);
+        double recent = 0;
+        for (Map.Entry<Integer, Integer> entry : experience.byYear.entrySet())
+            recent += entry.getValue() / (1.0 + Math.max(0, year - entry.getKey()));
+        int subsystemExperience = 0;
+        for (String subsystem : subsystems)
+            subsystemExperience += experience.bySubsystem.getOrDefault(subsystem, 0);
+        boolean fix = false;
+        for (String issueKey : CommitStore.issueKeys(subject)) {
+            Long since = this.bugs.get(issueKey);
+            if (since != null) {
+                fix = true;
+                blame(touched, since);
+            }
+        }
+
+        this.out.write(String.format(Locale.ROOT, "%d,%s,%d,%d,%d,%.4f,%d,%d,%d,%d,%.2f,%d,%d,%.2f,%d,%d%n",
+                version(epochSeconds), hash, subsystems.size(), directories.size(), paths.size(), entropy, la, ld,
+                lt, developers.size(), ageDays / paths.size(), lastChanges.size(), experience.commits, recent,
+                subsystemExperience, fix ? 1 : 0));
+        this.rows++;
+
+        // History up to and including this commit, for the ones after it
+        for (int i = 0; i < changed.size(); i++) {
+            String path = changed.get(i);
+            if (!path.endsWith(".java") || added[i] < 0)
+                continue;
+            FileHistory history = this.files.computeIfAbsent(path, k -> new FileHistory());
+            history.lines += added[i] - deleted[i];
+            // Deleted, forgotten so that memory follows the files that exist
+            if (history.lines <= 0 && deleted[i] > 0) {
+                this.files.remove(path);
+                continue;
+            }
+            history.developers.add(experience.name);
+            history.lastHash = hash;
+            history.lastChange = epochSeconds;
+        }
+        experience.commits++;
+        experience.byYear.merge(year, 1, Integer::sum);
+        for (String subsystem : subsystems)
+            experience.bySubsystem.merge(subsystem, 1, Integer::sum);
+    }
+
+    private void label(File unlabelled, File labelled) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(unlabelled.toPath(), StandardCharsets.UTF_8);
+             BufferedWriter writer = Files.newBufferedWriter(labelled.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(CSV_HEADER);
+            writer.newLine();
+            String line;
+            while ((line = in.readLine()) != null) {
+                int start = line.indexOf(',') + 1;
+                String hash = line.substring(start, line.indexOf(',', start));
+                writer.write(line);
+                writer.write(this.inducing.contains(hash) ? ",Yes" : ",No");
+                writer.newLine();
+            }
+        }
+    }
+
+    private static class FileHistory {
+
+        private final Set<String> developers = new HashSet<>();
+        private long lines;
+        private String lastHash;
+        private long lastChange;
+
+    }
+
+    private static class AuthorHistory {
+
+        private final String name;
+        private final Map<Integer, Integer> byYear = new HashMap<>();
+        private final Map<String, Integer> bySubsystem = new HashMap<>();
+        private int commits;
+
+        private AuthorHistory(String name) {
+            this.name = name;
+        }
+
+    }
+
+}
@@ -1,11 +1,13 @@
 package it.lorenzoval.deliverable2;
 
+import java.io.Serializable;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.HashSet;
 
-public class Metrics {
+public class Metrics implements Serializable {
 
+    private static final long serialVersionUID = 1L;
     private final long loc;
     private final HashSet<String> authors;
     private final long age;
@@ -49,6 +51,30 @@ public class Metrics {
         this.buggy = false;
     }
 
+    private Metrics(Metrics metrics, long loc) {
+        this.loc = loc;
+        this.authors = new HashSet<>(metrics.authors);
+        this.age = metrics.age;
+        this.locTouched = metrics.locTouched;
+        this.numRevs = metrics.numRevs;
+        this.numFixes = metrics.numFixes;
+        this.locAdded = metrics.locAdded;
+        this.maxLocAdded = metrics.maxLocAdded;
+        this.avgLocAdded = metrics.avgLocAdded;
+        this.churn = metrics.churn;
+        this.maxChurn = metrics.maxChurn;
+        this.avgChurn = metrics.avgChurn;
+        this.chgSetSize = metrics.chgSetSize;
+        this.maxChgSetSize = metrics.maxChgSetSize;
+        this.avgChgSetSize = metrics.avgChgSetSize;
+        this.buggy = metrics.buggy;
+    }
+
+    // Copy with another size, for a change that is not committed yet, leaving the release it belongs to untouched
+    public Metrics withLoc(long loc) {
+        return new Metrics(this, loc);
+    }
+
     public long getLoc() {
         return this.loc;
     }
@@ -0,0 +1,87 @@
+package it.lorenzoval.deliverable2;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.CostMatrix;
+import weka.classifiers.lazy.IBk;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.core.neighboursearch.NearestNeighbourSearch;
+
+public class NeighbourVoting {
+
+    private NeighbourVoting() {
+    }
+
+    public static boolean supports(Classifier classifier, Instances trainingSet) {
+        if (!(classifier instanceof IBk) || trainingSet.isEmpty())
+            return false;
+        IBk ibk = (IBk) classifier;
+        // Only plain majority voting is replicated
+        return ibk.getDistanceWeighting().getSelectedTag().getID() == IBk.WEIGHT_NONE && ibk.getWindowSize() == 0
+                && !ibk.getCrossValidate();
+    }
+
+    private static double[] classWeightFactors(Instances trainingSet, CostMatrix costMatrix) throws Exception {
+        // Same per class factors CostMatrix.applyCostMatrix gives to the instances of a WeightedInstancesHandler
+        CostMatrix normalized = new CostMatrix(costMatrix);
+        normalized.normalize();
+        int numClasses = trainingSet.numClasses();
+        double[] weightOfInstancesInClass = new double[numClasses];
+        for (Instance instance : trainingSet)
+            weightOfInstancesInClass[(int) instance.classValue()] += instance.weight();
+        double sumOfWeights = Utils.sum(weightOfInstancesInClass);
+        double sumOfWeightFactors = 0;
+        double[] weightFactor = new double[numClasses];
+        for (int i = 0; i < numClasses; i++) {
+            double sumOfMissClassWeights = 0;
+            for (int j = 0; j < numClasses; j++)
+                sumOfMissClassWeights += normalized.getElement(i, j);
+            weightFactor[i] = sumOfMissClassWeights * sumOfWeights;
+            sumOfWeightFactors += sumOfMissClassWeights * weightOfInstancesInClass[i];
+        }
+        for (int i = 0; i < numClasses; i++)
+            weightFactor[i] /= sumOfWeightFactors;
+        return weightFactor;
+    }
+
+    private static double[] vote(Instances neighbours, double[] weightFactor, int numClasses, int numTraining) {
+        // Same estimator correction as IBk
+        double[] distribution = new double[numClasses];
+        for (int i = 0; i < numClasses; i++)
+            distribution[i] = 1.0 / Math.max(1, numTraining);
+        double total = (double) numClasses / Math.max(1, numTraining);
+        for (Instance neighbour : neighbours) {
+            int classValue = (int) neighbour.classValue();
+            double weight = weightFactor != null ? neighbour.weight() * weightFactor[classValue] : neighbour.weight();
+            distribution[classValue] += weight;
+            total += weight;
+        }
+        if (total > 0)
+            Utils.normalize(distribution, total);
+        return distribution;
+    }
+
+    // The base model and the cost sensitive learning one share the same points, only the weights of the votes differ,
+    // so a single neighbour query per testing instance on the index of the trained base model serves both
+    public static CellResult predict(IBk model, Instances trainingSet, Instances testingSet, CostMatrix costMatrix)
+            throws Exception {
+        double[] weightFactor = classWeightFactors(trainingSet, costMatrix);
+        NearestNeighbourSearch search = model.getNearestNeighbourSearchAlgorithm();
+        int numClasses = trainingSet.numClasses();
+        double[][] base = new double[testingSet.size()][];
+        double[][] learning = new double[testingSet.size()][];
+        for (int i = 0; i < testingSet.size(); i++) {
+            Instance classMissing = (Instance) testingSet.get(i).copy();
+            classMissing.setDataset(testingSet);
+            classMissing.setClassMissing();
+            // As IBk does, this also extends the normalisation ranges with the testing instance
+            search.addInstanceInfo(classMissing);
+            Instances neighbours = search.kNearestNeighbours(classMissing, model.getKNN());
+            base[i] = vote(neighbours, null, numClasses, trainingSet.size());
+            learning[i] = vote(neighbours, weightFactor, numClasses, trainingSet.size());
+        }
+        return new CellResult(base, learning);
+    }
+
+}
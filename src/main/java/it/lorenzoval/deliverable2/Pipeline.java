@@ -0,0 +1,113 @@
+package it.lorenzoval.deliverable2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Mines and evaluates every project of the registry, each project moving to evaluation as soon as its dataset is
+// ready, so that git mining of one project overlaps training on another
+public class Pipeline {
+
+    private static final Logger logger = Logger.getLogger(Pipeline.class.getName());
+    private static final long MB = 1024L * 1024;
+    private static final long MINING_MB = 256;
+    // Weka keeps several copies of the dataset per fold, balanced and selected ones included
+    private static final long EVALUATION_MB_PER_DATASET_MB = 64;
+    private final ProjectRegistry registry;
+    private final EvaluationSettings settings;
+    private final Semaphore memory;
+    private final int memoryMb;
+
+    public Pipeline(ProjectRegistry registry, EvaluationSettings settings) {
+        this.registry = registry;
+        this.settings = settings;
+        // As many projects as there are stage threads may be evaluating at once, each gets its share of the budget
+        // for the threads its evaluation starts
+        int evaluating = Math.max(1, Math.min(registry.getThreads(), registry.getProjects().size()));
+        settings.setThreads(Math.max(1, Math.min(settings.getThreads(), registry.getThreads() / evaluating)));
+        this.memoryMb = (int) Math.min(Integer.MAX_VALUE, registry.getMemoryMb());
+        this.memory = new Semaphore(this.memoryMb, true);
+    }
+
+    private <T> T runWithin(Project project, String name, long estimateMb, Callable<T> stage) {
+        // A stage larger than the whole budget still runs, alone
+        int permits = (int) Math.max(1, Math.min(this.memoryMb, estimateMb));
+        this.memory.acquireUninterruptibly(permits);
+        try {
+            logger.log(Level.INFO, "{0} {1}", new Object[]{name, project.getProjectName()});
+            try (Instrumentation.Span span = Instrumentation.stage(project, name)) {
+                return stage.call();
+            }
+        } catch (Exception e) {
+            throw new PipelineException(project, name, e);
+        } finally {
+            this.memory.release(permits);
+        }
+    }
+
+    private static long evaluationEstimateMb(Project project) {
+        long datasetMb = Deliverable2.metricsFileFor(project).length() / MB + 1;
+        return datasetMb * EVALUATION_MB_PER_DATASET_MB;
+    }
+
+    // Skipped when the results on disk come from the same dataset and settings, returns whether it ran
+    static boolean evaluate(Project project, String datasetKey, EvaluationSettings settings) throws Exception {
+        StageCheckpoints checkpoints = StageCheckpoints.forProject(project);
+        String key = DatasetFingerprint.combine(datasetKey, StageCheckpoints.Stage.EVALUATION.name(),
+                settings.describe());
+        if (checkpoints.isValid(StageCheckpoints.Stage.EVALUATION, key) && ResultSink.forProject(project).isFile()) {
+            logger.log(Level.INFO, "Results of {0} are up to date", project.getProjectName());
+            return false;
+        }
+        WekaHandler.evaluateDataset(project, settings);
+        checkpoints.save(StageCheckpoints.Stage.EVALUATION, key, null);
+        return true;
+    }
+
+    // Returns the names of the projects that failed, the others are completed regardless
+    public List<String> run() {
+        ExecutorService executor = Executors.newFixedThreadPool(this.registry.getThreads());
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        List<String> failed = Collections.synchronizedList(new ArrayList<>());
+        try {
+            for (Project project : this.registry.getProjects())
+                futures.add(CompletableFuture
+                        .supplyAsync(() -> runWithin(project, "Mining", MINING_MB, () -> {
+                            GitHandler.cloneOrPull(project);
+                            String datasetKey = Deliverable2.buildDataset(project);
+                            if (this.registry.isCommitDataset())
+                                JitDataset.build(project, datasetKey);
+                            return datasetKey;
+                        }), executor)
+                        .thenAcceptAsync(datasetKey -> runWithin(project, "Evaluating",
+                                evaluationEstimateMb(project), () -> evaluate(project, datasetKey, this.settings)),
+                                executor)
+                        .exceptionally(e -> {
+                            logger.log(Level.SEVERE, e.getCause() != null ? e.getCause().getMessage() :
+                                    e.getMessage(), e);
+                            failed.add(project.getProjectName());
+                            return null;
+                        }));
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } finally {
+            executor.shutdown();
+        }
+        return failed;
+    }
+
+    private static class PipelineException extends RuntimeException {
+
+        private PipelineException(Project project, String stage, Exception cause) {
+            super(stage + " failed for " + project.getProjectName(), cause);
+        }
+
+    }
+
+}
@@ -0,0 +1,153 @@
+package it.lorenzoval.deliverable2;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class PredictionMetrics {
+
+    public static final String CSV_HEADER = "dataset,release,classifier,balancing,Feature Selection,Sensitivity,TP," +
+            "FP,TN,FN,Precision,Recall,AUC,Kappa,Precision@k,Recall@Effort";
+    private static final Logger logger = Logger.getLogger(PredictionMetrics.class.getName());
+    // Share of the files inspected for precision@k and share of the LOC inspected for effort-aware recall
+    private static final double TOP_K = 0.1;
+    private static final double EFFORT = 0.2;
+
+    private PredictionMetrics() {
+    }
+
+    private static Integer[] rankByProbability(PredictionStore.Cell cell) {
+        Integer[] order = new Integer[cell.size()];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        // Most likely buggy first, smaller files first among equally likely ones as they cost less to inspect
+        Arrays.sort(order, Comparator.<Integer>comparingDouble(cell::getProbability).reversed()
+                .thenComparingInt(cell::getLoc));
+        return order;
+    }
+
+    private static double auc(PredictionStore.Cell cell, Integer[] order, int positives) {
+        int negatives = cell.size() - positives;
+        if (positives == 0 || negatives == 0)
+            return Double.NaN;
+        // Mann-Whitney statistic walking ties from the most likely buggy down, ties count half
+        double pairs = 0;
+        int negativesBelow = negatives;
+        int i = 0;
+        while (i < order.length) {
+            int j = i;
+            int tiedPositives = 0;
+            int tiedNegatives = 0;
+            while (j < order.length && cell.getProbability(order[j]) == cell.getProbability(order[i])) {
+                if (cell.isBuggy(order[j]))
+                    tiedPositives++;
+                else
+                    tiedNegatives++;
+                j++;
+            }
+            negativesBelow -= tiedNegatives;
+            pairs += tiedPositives * (negativesBelow + 0.5 * tiedNegatives);
+            i = j;
+        }
+        return pairs / ((double) positives * negatives);
+    }
+
+    private static double precisionAtK(PredictionStore.Cell cell, Integer[] order) {
+        int k = (int) Math.max(1, Math.round(order.length * TOP_K));
+        int hits = 0;
+        for (int i = 0; i < k; i++)
+            if (cell.isBuggy(order[i]))
+                hits++;
+        return (double) hits / k;
+    }
+
+    private static double recallAtEffort(PredictionStore.Cell cell, Integer[] order, int positives) {
+        if (positives == 0)
+            return 0;
+        long totalLoc = 0;
+        for (int i = 0; i < cell.size(); i++)
+            totalLoc += cell.getLoc(i);
+        double budget = totalLoc * EFFORT;
+        long inspected = 0;
+        int hits = 0;
+        for (Integer i : order) {
+            inspected += cell.getLoc(i);
+            if (inspected > budget)
+                break;
+            if (cell.isBuggy(i))
+                hits++;
+        }
+        return (double) hits / positives;
+    }
+
+    private static void writeCell(BufferedWriter writer, PredictionStore.Cell cell) throws IOException {
+        int tp = 0;
+        int fp = 0;
+        int tn = 0;
+        int fn = 0;
+        for (int i = 0; i < cell.size(); i++) {
+            boolean predicted = cell.isPredictedBuggy(i);
+            if (cell.isBuggy(i)) {
+                if (predicted) tp++;
+                else fn++;
+            } else {
+                if (predicted) fp++;
+                else tn++;
+            }
+        }
+        int n = cell.size();
+        int positives = tp + fn;
+        // Zero when nothing is predicted buggy, as Weka has it
+        double precision = tp + fp != 0 ? (double) tp / (tp + fp) : 0;
+        double recall = positives != 0 ? (double) tp / positives : 0;
+        double observed = n != 0 ? (double) (tp + tn) / n : 0;
+        double chance = n != 0 ? ((double) (tp + fp) * positives + (double) (fn + tn) * (fp + tn)) / ((double) n * n)
+                : 0;
+        double kappa = chance < 1 ? (observed - chance) / (1 - chance) : 1;
+        Integer[] order = rankByProbability(cell);
+
+        StringBuilder line = new StringBuilder();
+        WekaResult.appendText(line, cell.getDataset());
+        line.append(',').append(n != 0 ? cell.getRelease(0) : 0).append(',');
+        WekaResult.appendText(line, cell.getClassifier());
+        line.append(',');
+        WekaResult.appendText(line, cell.getBalancing());
+        line.append(',');
+        WekaResult.appendText(line, cell.getFeatureSelection());
+        line.append(',');
+        WekaResult.appendText(line, cell.getSensitivity());
+        line.append(',').append(tp).append(',').append(fp).append(',').append(tn).append(',').append(fn).append(',')
+                .append(precision).append(',').append(recall).append(',').append(auc(cell, order, positives))
+                .append(',').append(kappa).append(',').append(precisionAtK(cell, order)).append(',')
+                .append(recallAtEffort(cell, order, positives));
+        writer.write(line.toString());
+        writer.newLine();
+    }
+
+    public static void writeToCSV(File predictions, File outFile) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(outFile.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(CSV_HEADER);
+            writer.newLine();
+            PredictionStore.forEachCell(predictions, cell -> writeCell(writer, cell));
+        }
+    }
+
+    public static void writeToCSV(Project project) throws IOException {
+        writeToCSV(PredictionStore.forProject(project), new File(project.getProjectName() + "_prediction_metrics.csv"));
+    }
+
+    public static void main(String[] args) throws IOException {
+        // Re-analysis of already stored predictions, one project name per argument
+        for (String projectName : args) {
+            logger.log(Level.INFO, "Computing metrics from stored predictions of {0}", projectName);
+            writeToCSV(new File(projectName + "_predictions.bin"), new File(projectName + "_prediction_metrics.csv"));
+        }
+    }
+
+}
@@ -0,0 +1,213 @@
+package it.lorenzoval.deliverable2;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+public class PredictionStore implements Closeable {
+
+    private static final int MAGIC = 0x44325052; // D2PR
+    private static final int VERSION = 1;
+    private static final int BUGGY_INDEX = 0;
+    private final CountingOutputStream counter;
+    private final DataOutputStream out;
+    private final long base;
+    private int[] fileIds;
+    private int[] releases;
+    private int[] locs;
+
+    // A positive offset resumes the store of an interrupted run, dropping whatever was written past it
+    public PredictionStore(File file, long offset) throws IOException {
+        if (offset > 0)
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(offset);
+            }
+        this.counter = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file, offset > 0)));
+        this.out = new DataOutputStream(this.counter);
+        this.base = Math.max(offset, 0);
+        if (offset <= 0) {
+            this.out.writeInt(MAGIC);
+            this.out.writeInt(VERSION);
+        }
+    }
+
+    public static File forProject(Project project) {
+        return new File(project.getProjectName() + "_predictions.bin");
+    }
+
+    public void setTestingSet(Instances testingSet) {
+        // Taken before feature selection, which may drop the file name or LOC
+        Attribute fileName = testingSet.attribute("File Name");
+        Attribute loc = testingSet.attribute("LOC");
+        if (fileName == null || loc == null)
+            throw new IllegalArgumentException("Testing set " + testingSet.relationName() +
+                    " has no File Name or LOC attribute, both needed for the effort aware metrics");
+        this.fileIds = new int[testingSet.size()];
+        this.releases = new int[testingSet.size()];
+        this.locs = new int[testingSet.size()];
+        for (int i = 0; i < testingSet.size(); i++) {
+            this.fileIds[i] = (int) testingSet.get(i).value(fileName);
+            this.releases[i] = (int) testingSet.get(i).value(0);
+            this.locs[i] = (int) testingSet.get(i).value(loc);
+        }
+    }
+
+    public void append(WekaResult wekaResult, Predictions predictions) throws IOException {
+        Instances testingSet = predictions.getTestingSet();
+        this.out.writeUTF(wekaResult.getDataset());
+        this.out.writeUTF(wekaResult.getClassifier());
+        this.out.writeUTF(wekaResult.getBalancing());
+        this.out.writeUTF(wekaResult.getFeatureSelection());
+        this.out.writeUTF(wekaResult.getSensitivity());
+        this.out.writeInt(testingSet.size());
+        for (int i = 0; i < testingSet.size(); i++) {
+            this.out.writeInt(this.fileIds[i]);
+            this.out.writeInt(this.releases[i]);
+            double[] distribution = predictions.getDistribution(i);
+            this.out.writeBoolean((int) testingSet.get(i).classValue() == BUGGY_INDEX);
+            // Decision taken by Weka, as rounding makes it unreliable to derive it back from the probability
+            this.out.writeBoolean(Utils.maxIndex(distribution) == BUGGY_INDEX);
+            this.out.writeDouble(distribution[BUGGY_INDEX]);
+            this.out.writeInt(this.locs[i]);
+        }
+    }
+
+    // Size of the store once everything appended so far is written
+    public long getOffset() {
+        return this.base + this.counter.getByteCount();
+    }
+
+    public void flush() throws IOException {
+        this.out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.out.close();
+    }
+
+    public interface CellConsumer {
+        void accept(Cell cell) throws IOException;
+    }
+
+    public static void forEachCell(File file, CellConsumer consumer) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("Unsupported prediction store " + file);
+            Cell cell = new Cell();
+            while (cell.read(in))
+                consumer.accept(cell);
+        }
+    }
+
+    // Reused from one cell to the next while reading, so consumers must not keep it
+    public static class Cell {
+
+        private String dataset;
+        private String classifier;
+        private String balancing;
+        private String featureSelection;
+        private String sensitivity;
+        private int size;
+        private int[] fileIds = new int[0];
+        private int[] releases = new int[0];
+        private boolean[] buggy = new boolean[0];
+        private boolean[] predicted = new boolean[0];
+        private double[] probabilities = new double[0];
+        private int[] locs = new int[0];
+
+        private boolean read(DataInputStream in) throws IOException {
+            try {
+                this.dataset = in.readUTF();
+            } catch (EOFException e) {
+                return false;
+            }
+            this.classifier = in.readUTF();
+            this.balancing = in.readUTF();
+            this.featureSelection = in.readUTF();
+            this.sensitivity = in.readUTF();
+            this.size = in.readInt();
+            if (this.fileIds.length < this.size) {
+                this.fileIds = new int[this.size];
+                this.releases = new int[this.size];
+                this.buggy = new boolean[this.size];
+                this.predicted = new boolean[this.size];
+                this.probabilities = new double[this.size];
+                this.locs = new int[this.size];
+            }
+            for (int i = 0; i < this.size; i++) {
+                this.fileIds[i] = in.readInt();
+                this.releases[i] = in.readInt();
+                this.buggy[i] = in.readBoolean();
+                this.predicted[i] = in.readBoolean();
+                this.probabilities[i] = in.readDouble();
+                this.locs[i] = in.readInt();
+            }
+            return true;
+        }
+
+        public String getDataset() {
+            return this.dataset;
+        }
+
+        public String getClassifier() {
+            return this.classifier;
+        }
+
+        public String getBalancing() {
+            return this.balancing;
+        }
+
+        public String getFeatureSelection() {
+            return this.featureSelection;
+        }
+
+        public String getSensitivity() {
+            return this.sensitivity;
+        }
+
+        public int size() {
+            return this.size;
+        }
+
+        public int getFileId(int i) {
+            return this.fileIds[i];
+        }
+
+        public int getRelease(int i) {
+            return this.releases[i];
+        }
+
+        public boolean isBuggy(int i) {
+            return this.buggy[i];
+        }
+
+        public boolean isPredictedBuggy(int i) {
+            return this.predicted[i];
+        }
+
+        public double getProbability(int i) {
+            return this.probabilities[i];
+        }
+
+        public int getLoc(int i) {
+            return this.locs[i];
+        }
+
+    }
+
+}
@@ -0,0 +1,66 @@
+package it.lorenzoval.deliverable2;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.CostMatrix;
+import weka.classifiers.evaluation.Evaluation;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+public class Predictions {
+
+    private final Instances testingSet;
+    private final double[][] distributions;
+
+    private Predictions(Instances testingSet, double[][] distributions) {
+        this.testingSet = testingSet;
+        this.distributions = distributions;
+    }
+
+    public static Predictions of(Classifier classifier, Instances testingSet) throws Exception {
+        double[][] distributions = new double[testingSet.size()][];
+        for (int i = 0; i < testingSet.size(); i++) {
+            // Same as Evaluation.evaluateModel, the classifier never sees the actual class
+            Instance classMissing = (Instance) testingSet.get(i).copy();
+            classMissing.setDataset(testingSet);
+            classMissing.setClassMissing();
+            distributions[i] = classifier.distributionForInstance(classMissing);
+        }
+        return new Predictions(testingSet, distributions);
+    }
+
+    public static Predictions of(Instances testingSet, double[][] distributions) {
+        return new Predictions(testingSet, distributions);
+    }
+
+    public Instances getTestingSet() {
+        return this.testingSet;
+    }
+
+    public double[][] getDistributions() {
+        return this.distributions;
+    }
+
+    public double[] getDistribution(int i) {
+        return this.distributions[i];
+    }
+
+    public Predictions minimizeExpectedCost(CostMatrix costMatrix) throws Exception {
+        // Same decision rule as CostSensitiveClassifier with minimizeExpectedCost, applied to already known
+        // probabilities instead of retraining the wrapped classifier
+        double[][] decisions = new double[this.distributions.length][];
+        for (int i = 0; i < this.distributions.length; i++) {
+            decisions[i] = new double[this.distributions[i].length];
+            decisions[i][Utils.minIndex(costMatrix.expectedCosts(this.distributions[i]))] = 1.0;
+        }
+        return new Predictions(this.testingSet, decisions);
+    }
+
+    public Evaluation evaluate() throws Exception {
+        Evaluation evaluation = new Evaluation(this.testingSet);
+        for (int i = 0; i < this.distributions.length; i++)
+            evaluation.evaluateModelOnceAndRecordPrediction(this.distributions[i], this.testingSet.get(i));
+        return evaluation;
+    }
+
+}
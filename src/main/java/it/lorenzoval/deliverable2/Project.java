@@ -1,17 +1,40 @@
 package it.lorenzoval.deliverable2;
 
-public abstract class Project {
+public class Project {
 
+    // Where the projects of the original study keep their issues
+    public static final String APACHE_JIRA = "https://issues.apache.org/jira";
+    public static final int DEFAULT_ISSUES_MAX_AGE_HOURS = 24;
     private final String url;
     private final String projectName;
     private final String releaseString;
     private final double movingWindow;
+    private final String jiraUrl;
+    private final InjectedVersions injectedVersions;
+    private final int issuesMaxAgeHours;
 
-    protected Project(String url, String projectName, String releaseString, double movingWindow) {
+    public Project(String url, String projectName, String releaseString, double movingWindow) {
+        this(url, projectName, releaseString, movingWindow, APACHE_JIRA);
+    }
+
+    public Project(String url, String projectName, String releaseString, double movingWindow, String jiraUrl) {
+        this(url, projectName, releaseString, movingWindow, jiraUrl, InjectedVersions.JIRA);
+    }
+
+    public Project(String url, String projectName, String releaseString, double movingWindow, String jiraUrl,
+                   InjectedVersions injectedVersions) {
+        this(url, projectName, releaseString, movingWindow, jiraUrl, injectedVersions, DEFAULT_ISSUES_MAX_AGE_HOURS);
+    }
+
+    public Project(String url, String projectName, String releaseString, double movingWindow, String jiraUrl,
+                   InjectedVersions injectedVersions, int issuesMaxAgeHours) {
         this.url = url;
         this.projectName = projectName;
         this.releaseString = releaseString;
         this.movingWindow = movingWindow;
+        this.jiraUrl = jiraUrl;
+        this.injectedVersions = injectedVersions;
+        this.issuesMaxAgeHours = issuesMaxAgeHours;
     }
 
     public String getUrl() {
@@ -29,4 +52,24 @@ public abstract class Project {
     public double getMovingWindow() {
         return this.movingWindow;
     }
+
+    public String getJiraUrl() {
+        return this.jiraUrl;
+    }
+
+    public InjectedVersions getInjectedVersions() {
+        return this.injectedVersions;
+    }
+
+    // How long the issues fetched from JIRA are taken as current before a run fetches them again, 0 always does
+    public int getIssuesMaxAgeHours() {
+        return this.issuesMaxAgeHours;
+    }
+
+    // Where the injected version of a bug comes from: the affected versions in JIRA, estimated by proportion when
+    // there are none, or the commits the fix commits blame, see SzzEngine
+    public enum InjectedVersions {
+        JIRA, SZZ
+    }
+
 }
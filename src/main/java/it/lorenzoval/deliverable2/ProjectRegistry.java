@@ -0,0 +1,97 @@
+package it.lorenzoval.deliverable2;
+
+import org.apache.commons.io.FileUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public class ProjectRegistry {
+
+    private static final long MB = 1024L * 1024;
+    private final List<Project> projects;
+    private final int threads;
+    private final long memoryMb;
+    private final boolean commitDataset;
+
+    public ProjectRegistry(List<Project> projects, int threads, long memoryMb) {
+        this(projects, threads, memoryMb, false);
+    }
+
+    public ProjectRegistry(List<Project> projects, int threads, long memoryMb, boolean commitDataset) {
+        if (threads < 1 || memoryMb < 1)
+            throw new IllegalArgumentException("Thread and memory budgets must be positive");
+        this.projects = projects;
+        this.threads = threads;
+        this.memoryMb = memoryMb;
+        this.commitDataset = commitDataset;
+    }
+
+    private static int defaultThreads() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    private static long defaultMemoryMb() {
+        // Leave some headroom to what the stages are not accounted for
+        return Runtime.getRuntime().maxMemory() / MB * 4 / 5;
+    }
+
+    // The two projects of the original study
+    public static ProjectRegistry defaults() {
+        List<Project> projects = new ArrayList<>();
+        projects.add(new Project("https://github.com/apache/syncope", "syncope", "syncope-{0}", 0.01));
+        projects.add(new Project("https://github.com/apache/bookkeeper", "bookkeeper", "release-{0}", 0.02));
+        return new ProjectRegistry(projects, defaultThreads(), defaultMemoryMb());
+    }
+
+    // {"threads": 4, "memoryMb": 8192,
+    //  "projects": [{"name": "syncope", "url": "https://github.com/apache/syncope",
+    //                "releaseString": "syncope-{0}", "movingWindow": 0.01}]}
+    // where name is also the JIRA key and releaseString the pattern of the release tags. An optional jiraUrl points
+    // to another JIRA instance than the Apache one, and "injectedVersions": "szz" takes injected versions from the
+    // fix commits rather than from JIRA, and "issuesMaxAgeHours" is how long fetched issues are reused before JIRA is
+    // asked again, a day by default. "commitDataset": true also writes the commit level dataset of every project, see
+    // JitDataset. The threads are shared by the stages running at once and by the threads evaluating ones start, see
+    // Pipeline
+    public static ProjectRegistry load(File file) throws IOException {
+        JSONObject json = new JSONObject(FileUtils.readFileToString(file, StandardCharsets.UTF_8));
+        List<Project> projects = new ArrayList<>();
+        JSONArray array = json.getJSONArray("projects");
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject project = array.getJSONObject(i);
+            projects.add(new Project(project.getString("url"), project.getString("name"),
+                    project.getString("releaseString"), project.getDouble("movingWindow"),
+                    project.optString("jiraUrl", Project.APACHE_JIRA), Project.InjectedVersions.valueOf(
+                    project.optString("injectedVersions", "jira").toUpperCase(Locale.ROOT)),
+                    project.optInt("issuesMaxAgeHours", Project.DEFAULT_ISSUES_MAX_AGE_HOURS)));
+        }
+        try {
+            return new ProjectRegistry(projects, json.optInt("threads", defaultThreads()),
+                    json.optLong("memoryMb", defaultMemoryMb()), json.optBoolean("commitDataset", false));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid project registry " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    public List<Project> getProjects() {
+        return this.projects;
+    }
+
+    public int getThreads() {
+        return this.threads;
+    }
+
+    public long getMemoryMb() {
+        return this.memoryMb;
+    }
+
+    public boolean isCommitDataset() {
+        return this.commitDataset;
+    }
+
+}
@@ -1,10 +1,12 @@
 package it.lorenzoval.deliverable2;
 
+import java.io.Serializable;
 import java.time.LocalDate;
 import java.util.*;
 
-public class Release implements Comparable<Release> {
+public class Release implements Comparable<Release>, Serializable {
 
+    private static final long serialVersionUID = 1L;
     private final String name;
     private final LocalDate gitReleaseDate; // Used for file age
     private final LocalDate jiraReleaseDate; // Used for operations related to bugs
@@ -1,5 +1,6 @@
 package it.lorenzoval.deliverable2;
 
+import java.io.Serializable;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -12,8 +13,9 @@ import java.util.regex.Pattern;
 
 import static java.lang.Math.min;
 
-public class ReleasesList {
+public class ReleasesList implements Serializable {
 
+    private static final long serialVersionUID = 1L;
     private static final Logger logger = Logger.getLogger(ReleasesList.class.getName());
     private final List<Release> main;
     private final List<Release> dropped;
@@ -101,8 +103,9 @@ public class ReleasesList {
     }
 
     public Release getReleaseByDate(LocalDate date) {
-        // Check last releaseDate of main releases
-        if (main.get(main.size() - 1).getJiraReleaseDate().isBefore(date)) {
+        // Check last releaseDate of main releases, a bug opened on that day belongs to the next one as it does for the
+        // other main releases
+        if (!main.get(main.size() - 1).getJiraReleaseDate().isAfter(date)) {
             for (Release release : dropped) {
                 if (release.getJiraReleaseDate().isAfter(date))
                     return release;
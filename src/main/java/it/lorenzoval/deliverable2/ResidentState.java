@@ -0,0 +1,72 @@
+package it.lorenzoval.deliverable2;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// What a project keeps in memory from one request of the Daemon to the next: the checkpoints of its stages along with
+// the latest snapshot, its commit store and its cache of trained models. Disabled in batch runs, which open and close
+// them around each stage instead
+public class ResidentState {
+
+    private static final Logger logger = Logger.getLogger(ResidentState.class.getName());
+    private static final Map<String, ResidentState> states = new ConcurrentHashMap<>();
+    private static volatile boolean enabled = false;
+    private final Project project;
+    private StageCheckpoints checkpoints;
+    private CommitStore commitStore;
+    private DiskCache cache;
+
+    private ResidentState(Project project) {
+        this.project = project;
+    }
+
+    public static void enable() {
+        enabled = true;
+    }
+
+    // Null unless enabled
+    public static ResidentState of(Project project) {
+        if (!enabled)
+            return null;
+        return states.computeIfAbsent(project.getProjectName(), name -> new ResidentState(project));
+    }
+
+    public synchronized StageCheckpoints getCheckpoints() throws IOException {
+        if (this.checkpoints == null)
+            this.checkpoints = StageCheckpoints.resident(this.project);
+        return this.checkpoints;
+    }
+
+    public synchronized CommitStore getCommitStore() throws IOException {
+        if (this.commitStore == null)
+            this.commitStore = CommitStore.open(this.project);
+        return this.commitStore;
+    }
+
+    public synchronized DiskCache getCache() throws IOException {
+        if (this.cache == null)
+            this.cache = DiskCache.resident(this.project);
+        return this.cache;
+    }
+
+    public static void closeAll() {
+        for (ResidentState state : states.values()) {
+            synchronized (state) {
+                if (state.commitStore == null)
+                    continue;
+                try {
+                    state.commitStore.close();
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Unable to close commit store of {0}",
+                            state.project.getProjectName());
+                }
+                state.commitStore = null;
+            }
+        }
+        states.clear();
+    }
+
+}
@@ -0,0 +1,173 @@
+package it.lorenzoval.deliverable2;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class ResultSink implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(ResultSink.class.getName());
+    private static final String SEPARATOR = System.lineSeparator();
+    private final CountingOutputStream counter;
+    private final Writer out;
+    private final long base;
+    private final Writer manifest;
+    private final PredictionStore predictionStore;
+    private final Map<String, List<String>> completed;
+    private final StringBuilder line;
+
+    private ResultSink(File file, long offset, Writer manifest, PredictionStore predictionStore,
+                       Map<String, List<String>> completed) throws IOException {
+        this.counter = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file, offset > 0)));
+        this.out = new OutputStreamWriter(this.counter, StandardCharsets.UTF_8);
+        this.base = Math.max(offset, 0);
+        this.manifest = manifest;
+        this.predictionStore = predictionStore;
+        this.completed = completed;
+        this.line = new StringBuilder();
+        if (offset <= 0) {
+            this.out.write(WekaResult.CSV_HEADER);
+            this.out.write(SEPARATOR);
+        }
+    }
+
+    public static File forProject(Project project) {
+        return new File(project.getProjectName() + "_weka.csv");
+    }
+
+    public static File manifestForProject(Project project) {
+        return new File(project.getProjectName() + "_weka.manifest");
+    }
+
+    private static void truncate(File file, long offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(offset);
+        }
+    }
+
+    // The manifest starts with the key of the run, then has a line per completed cell with the size of the results
+    // and of the prediction store right after it. A run with the same key resumes after the last completed cell,
+    // anything else starts over.
+    public static ResultSink open(Project project, String runKey) throws IOException {
+        File file = forProject(project);
+        File manifestFile = manifestForProject(project);
+        File storeFile = PredictionStore.forProject(project);
+        List<String> entries = new ArrayList<>();
+        Map<String, List<String>> completed = new HashMap<>();
+        long offset = 0;
+        long storeOffset = 0;
+
+        String manifestText = manifestFile.isFile() ?
+                FileUtils.readFileToString(manifestFile, StandardCharsets.UTF_8) : "";
+        List<String> manifestLines = IOUtils.readLines(new StringReader(manifestText));
+        // A crash while writing the manifest leaves at most its last line torn, that is without the newline every
+        // entry ends with, and possibly cut inside a field that still parses
+        if (!manifestText.endsWith("\n") && manifestLines.size() > 1)
+            manifestLines.remove(manifestLines.size() - 1);
+        if (!manifestLines.isEmpty() && manifestLines.get(0).equals(runKey) && file.isFile() && storeFile.isFile()) {
+            // Cells are recorded in file order, so their rows are read in a single pass, one cell at a time
+            try (DataInputStream results = new DataInputStream(new BufferedInputStream(
+                    Files.newInputStream(file.toPath())))) {
+                long length = file.length();
+                long previous = WekaResult.CSV_HEADER.length() + SEPARATOR.length();
+                IOUtils.skipFully(results, Math.min(previous, length));
+                for (String entry : manifestLines.subList(1, manifestLines.size())) {
+                    String[] fields = entry.split("\t");
+                    if (fields.length != 3)
+                        break;
+                    long cellOffset = Long.parseLong(fields[1]);
+                    long cellStoreOffset = Long.parseLong(fields[2]);
+                    // Both files only ever grow, cell after cell
+                    if (cellOffset < previous || cellOffset > length || cellStoreOffset < storeOffset ||
+                            cellStoreOffset > storeFile.length())
+                        break;
+                    // The rows of a single cell, a few per cost setting
+                    byte[] bytes = new byte[Math.toIntExact(cellOffset - previous)];
+                    results.readFully(bytes);
+                    String rows = new String(bytes, StandardCharsets.UTF_8);
+                    completed.put(fields[0], rows.isEmpty() ? Collections.emptyList() :
+                            Arrays.asList(rows.split(SEPARATOR)));
+                    entries.add(entry);
+                    previous = cellOffset;
+                    offset = cellOffset;
+                    storeOffset = cellStoreOffset;
+                }
+            }
+        }
+
+        if (offset > 0) {
+            // Rows and predictions of the cell that was running when the previous run stopped are dropped
+            truncate(file, offset);
+            logger.log(Level.INFO, "Resuming {0} after {1} completed cells",
+                    new Object[]{project.getProjectName(), completed.size()});
+        }
+        List<String> rewritten = new ArrayList<>();
+        rewritten.add(runKey);
+        rewritten.addAll(entries);
+        FileUtils.writeLines(manifestFile, StandardCharsets.UTF_8.name(), rewritten);
+        Writer manifest = new OutputStreamWriter(new FileOutputStream(manifestFile, true), StandardCharsets.UTF_8);
+        return new ResultSink(file, offset, manifest, new PredictionStore(storeFile, storeOffset), completed);
+    }
+
+    public PredictionStore getPredictionStore() {
+        return this.predictionStore;
+    }
+
+    public boolean isCompleted(String cellId) {
+        return this.completed.containsKey(cellId);
+    }
+
+    // Rows written for a cell completed by an earlier run
+    public List<String> getRows(String cellId) {
+        return this.completed.get(cellId);
+    }
+
+    public void add(WekaResult wekaResult) throws IOException {
+        this.line.setLength(0);
+        wekaResult.appendCSVLine(this.line);
+        this.line.append(SEPARATOR);
+        this.out.append(this.line);
+    }
+
+    // Results are handed to the operating system before the manifest records the cell, so that a crash never leaves
+    // a completed cell with missing rows
+    public void completeCell(String cellId) throws IOException {
+        this.predictionStore.flush();
+        this.out.flush();
+        long offset = this.base + this.counter.getByteCount();
+        this.manifest.write(cellId + "\t" + offset + "\t" + this.predictionStore.getOffset() + "\n");
+        this.manifest.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (Writer closingOut = this.out; Writer closingManifest = this.manifest;
+             PredictionStore closingStore = this.predictionStore) {
+            closingOut.flush();
+        }
+    }
+
+}
@@ -0,0 +1,187 @@
+package it.lorenzoval.deliverable2;
+
+import org.apache.commons.io.FileUtils;
+import weka.attributeSelection.AttributeSelection;
+import weka.attributeSelection.BestFirst;
+import weka.attributeSelection.CfsSubsetEval;
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.core.BatchPredictor;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.Remove;
+
+import java.io.File;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// A classifier trained on every main release of the dataset of a project, along with what it takes to turn Metrics
+// into the instances it was trained on: the attributes feature selection kept, in order. Scoring needs neither the
+// CSV nor any filter, so a model read back from the cache scores right away
+public class RiskModel implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final Logger logger = Logger.getLogger(RiskModel.class.getName());
+    // Version and File Name only identify a row, they do not carry over to a release the model has not seen
+    private static final int FIRST_METRIC = 2;
+    private final String configuration;
+    private final Instances header;
+    // Position in vector() of each attribute of the header, -1 for the class
+    private final int[] positions;
+    private final Classifier classifier;
+
+    private RiskModel(String configuration, Instances header, int[] positions, Classifier classifier) {
+        this.configuration = configuration;
+        this.header = header;
+        this.positions = positions;
+        this.classifier = classifier;
+    }
+
+    // Same order as the metric columns of writeDatasetToCSV
+    private static double[] vector(Metrics metrics) {
+        return new double[]{metrics.getLoc(), metrics.getLocTouched(), metrics.getNumRevs(), metrics.getNumFixes(),
+                metrics.getNumAuthors(), metrics.getLocAdded(), metrics.getMaxLocAdded(), metrics.getAvgLocAdded(),
+                metrics.getChurn(), metrics.getMaxChurn(), metrics.getAvgChurn(), metrics.getChgSetSize(),
+                metrics.getMaxChgSetSize(), metrics.getAvgChgSetSize(), metrics.getAge(), metrics.getWeightedAge()};
+    }
+
+    private static String labelOf(EvaluationPlan.ClassifierSpec spec) {
+        String className = spec.getClassName();
+        return spec.getName() != null ? spec.getName() : className.substring(className.lastIndexOf('.') + 1);
+    }
+
+    // Configuration of the plan with the best mean AUC without cost sensitivity over the folds of the last
+    // evaluation, the first one of the plan when there is none
+    static EvaluationPlan.Job bestJob(Project project, EvaluationPlan plan) throws Exception {
+        File results = ResultSink.forProject(project);
+        List<String> lines = results.isFile() ? FileUtils.readLines(results, StandardCharsets.UTF_8) : null;
+        EvaluationPlan.Job best = null;
+        double bestAuc = Double.NEGATIVE_INFINITY;
+        for (EvaluationPlan.Job job : plan.jobs()) {
+            if (best == null)
+                best = job;
+            if (lines == null)
+                break;
+            double sum = 0;
+            int count = 0;
+            for (int i = 1; i < lines.size(); i++) {
+                WekaResult wekaResult = WekaResult.fromCSVLine(lines.get(i));
+                if (job.getFeatureSelection().equals(wekaResult.getFeatureSelection()) &&
+                        job.getBalancing().equals(wekaResult.getBalancing()) &&
+                        labelOf(job.getClassifier()).equals(wekaResult.getClassifier()) &&
+                        wekaResult.getSensitivity().startsWith(EvaluationPlan.NO_COST_SENSITIVE) &&
+                        !Double.isNaN(wekaResult.getAuc())) {
+                    sum += wekaResult.getAuc();
+                    count++;
+                }
+            }
+            if (count > 0 && sum / count > bestAuc) {
+                bestAuc = sum / count;
+                best = job;
+            }
+        }
+        return best;
+    }
+
+    static RiskModel train(Project project, EvaluationPlan.Job job) throws Exception {
+        Instances dataset = WekaHandler.loadCSV(project);
+        Remove remove = new Remove();
+        remove.setAttributeIndices("1-" + FIRST_METRIC);
+        remove.setInputFormat(dataset);
+        Instances trainingSet = Filter.useFilter(dataset, remove);
+        trainingSet.setClassIndex(trainingSet.numAttributes() - 1);
+
+        int[] selected = new int[trainingSet.numAttributes()];
+        for (int i = 0; i < selected.length; i++)
+            selected[i] = i;
+        if (EvaluationPlan.BEST_FIRST.equals(job.getFeatureSelection())) {
+            AttributeSelection attributeSelection = new AttributeSelection();
+            attributeSelection.setEvaluator(new CfsSubsetEval());
+            attributeSelection.setSearch(new BestFirst());
+            attributeSelection.SelectAttributes(trainingSet);
+            // Ascending, class last
+            selected = attributeSelection.selectedAttributes();
+            remove = new Remove();
+            remove.setAttributeIndicesArray(selected);
+            remove.setInvertSelection(true);
+            remove.setInputFormat(trainingSet);
+            trainingSet = Filter.useFilter(trainingSet, remove);
+            trainingSet.setClassIndex(trainingSet.numAttributes() - 1);
+        }
+        int[] positions = new int[selected.length];
+        for (int i = 0; i < selected.length; i++)
+            positions[i] = i == trainingSet.classIndex() ? -1 : selected[i];
+        Instances header = new Instances(trainingSet, 0);
+
+        int buggy = 0;
+        for (Instance instance : trainingSet)
+            // Yes is the first label of Buggy
+            if (instance.classValue() == 0)
+                buggy++;
+        Filter filter = WekaHandler.balancingFilter(job.getBalancing(),
+                WekaHandler.calculatePercentage(buggy, trainingSet.size()));
+        if (filter != null && WekaHandler.needsBalancing(trainingSet)) {
+            filter.setInputFormat(trainingSet);
+            trainingSet = Filter.useFilter(trainingSet, filter);
+        }
+        EvaluationPlan.ClassifierSpec spec = job.getClassifier();
+        Classifier classifier = AbstractClassifier.forName(spec.getClassName(), spec.getOptions());
+        classifier.buildClassifier(trainingSet);
+        String configuration = job.getFeatureSelection() + "|" + job.getBalancing() + "|" + labelOf(spec);
+        logger.log(Level.INFO, "Trained risk model {0} of {1} on {2} instances",
+                new Object[]{configuration, project.getProjectName(), trainingSet.size()});
+        return new RiskModel(configuration, header, positions, classifier);
+    }
+
+    // Trained once per dataset and configuration, later read back from the cache of the project
+    public static RiskModel forProject(Project project, String datasetKey, EvaluationPlan plan) throws Exception {
+        EvaluationPlan.Job job = bestJob(project, plan);
+        EvaluationPlan.ClassifierSpec spec = job.getClassifier();
+        String key = DatasetFingerprint.combine(datasetKey, "risk", job.getFeatureSelection(), job.getBalancing(),
+                spec.getClassName(), Utils.joinOptions(spec.getOptions()));
+        DiskCache cache = DiskCache.forProject(project);
+        RiskModel model = (RiskModel) cache.get(key);
+        if (model == null) {
+            model = train(project, job);
+            cache.put(key, model);
+        }
+        return model;
+    }
+
+    public String getConfiguration() {
+        return this.configuration;
+    }
+
+    // Probability of being buggy of each file, in the order given, predicted as a single batch. Classifiers such as
+    // IBk keep search state between predictions, hence the lock
+    public synchronized double[] score(List<Metrics> files) throws Exception {
+        Instances batch = new Instances(this.header, files.size());
+        for (Metrics metrics : files) {
+            double[] vector = vector(metrics);
+            double[] values = new double[this.positions.length];
+            for (int i = 0; i < values.length; i++)
+                values[i] = this.positions[i] >= 0 ? vector[this.positions[i]] : Utils.missingValue();
+            batch.add(new DenseInstance(1.0, values));
+        }
+        double[][] distributions;
+        if (this.classifier instanceof BatchPredictor &&
+                ((BatchPredictor) this.classifier).implementsMoreEfficientBatchPrediction()) {
+            distributions = ((BatchPredictor) this.classifier).distributionsForInstances(batch);
+        } else {
+            distributions = new double[batch.size()][];
+            for (int i = 0; i < batch.size(); i++)
+                distributions[i] = this.classifier.distributionForInstance(batch.get(i));
+        }
+        double[] scores = new double[distributions.length];
+        for (int i = 0; i < scores.length; i++)
+            scores[i] = distributions[i][0];
+        return scores;
+    }
+
+}
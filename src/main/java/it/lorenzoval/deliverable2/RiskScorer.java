@@ -0,0 +1,189 @@
+package it.lorenzoval.deliverable2;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// Ranks the files of a project by how likely they are to be buggy, either at a revision past its labelled history,
+// such as a new tag, or as changed by commits not made yet, such as the ones of a pull request. The model and the
+// metrics of the last labelled release are read once, when created: a revision costs the commits since that release,
+// most of them already in the commit store, and its release is kept for the requests that follow on the same commit.
+// Its commit related metrics only cover the commits since the latest release it contains, as in the dataset
+public class RiskScorer {
+
+    // Releases at the latest revisions asked for, by commit hash
+    private static final int RELEASES = 16;
+    private final Project project;
+    private final RiskModel model;
+    private final Release base;
+    // Releases after the base one, left out of the dataset, oldest first
+    private final List<Release> later;
+    private final Set<String> bugKeys;
+    private final Map<String, Release> releases;
+
+    private RiskScorer(Project project, RiskModel model, Release base, List<Release> later, Set<String> bugKeys) {
+        this.project = project;
+        this.model = model;
+        this.base = base;
+        this.later = later;
+        this.bugKeys = bugKeys;
+        this.releases = new LinkedHashMap<String, Release>(RELEASES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Release> eldest) {
+                return size() > RELEASES;
+            }
+        };
+    }
+
+    // The dataset must be up to date, that is just built with the key given
+    public static RiskScorer forProject(Project project, String datasetKey, EvaluationPlan plan) throws Exception {
+        StageCheckpoints.Snapshot history = Deliverable2.loadHistory(project);
+        if (history == null)
+            throw new IllegalStateException("No labelled history for " + project.getProjectName() +
+                    ", its dataset has to be built first");
+        List<Release> main = history.getReleasesList().getMain();
+        Set<String> bugKeys = new HashSet<>();
+        for (Issue bug : history.getBugs())
+            bugKeys.add(bug.getKey().toUpperCase(Locale.ROOT));
+        return new RiskScorer(project, RiskModel.forProject(project, datasetKey, plan), main.get(main.size() - 1),
+                history.getReleasesList().getDropped(), bugKeys);
+    }
+
+    public RiskModel getModel() {
+        return this.model;
+    }
+
+    private Release releaseAt(String revision) throws IOException, InterruptedException {
+        // A hash already seen needs no git process, unlike names such as HEAD which may have moved since
+        synchronized (this.releases) {
+            Release release = this.releases.get(revision);
+            if (release != null)
+                return release;
+        }
+        String hash = GitHandler.resolve(this.project, revision);
+        if (hash == null)
+            throw new IllegalArgumentException("No commit " + revision + " in " + this.project.getProjectName());
+        synchronized (this.releases) {
+            Release release = this.releases.get(hash);
+            if (release != null)
+                return release;
+        }
+        // Built without the lock, so that requests on other revisions are not held up by git. Concurrent requests
+        // on the same one may both build it, the first one published wins
+        Release built = GitHandler.releaseAt(this.project, this.base, this.later, hash, this.bugKeys);
+        synchronized (this.releases) {
+            Release release = this.releases.get(hash);
+            if (release != null)
+                return release;
+            this.releases.put(hash, built);
+            return built;
+        }
+    }
+
+    private static List<Score> rank(List<String> files, double[] scores, int from) {
+        List<Score> ranked = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++)
+            ranked.add(new Score(files.get(i), scores[from + i]));
+        ranked.sort(Comparator.comparingDouble(Score::getRisk).reversed());
+        return ranked;
+    }
+
+    // Every file of the release at the revision, riskiest first
+    public List<Score> scoreRevision(String revision) throws Exception {
+        long start = System.nanoTime();
+        Release release = releaseAt(revision);
+        List<String> files = new ArrayList<>(release.getFiles().keySet());
+        List<Metrics> metrics = new ArrayList<>();
+        for (String file : files)
+            metrics.add(release.getFiles().get(file));
+        List<Score> ranked = rank(files, this.model.score(metrics), 0);
+        Instrumentation.scoring(this.project.getProjectName(), files.size(), System.nanoTime() - start);
+        return ranked;
+    }
+
+    // Files each change leaves behind, riskiest first, as if it was committed on top of the revision. Changes are
+    // scored independently of each other but predicted as a single batch
+    public List<List<Score>> scoreChanges(String revision, List<Change> changes) throws Exception {
+        long start = System.nanoTime();
+        Release release = releaseAt(revision);
+        LocalDate date = release.getGitReleaseDate();
+        List<List<String>> files = new ArrayList<>();
+        List<Metrics> metrics = new ArrayList<>();
+        for (Change change : changes) {
+            List<String> changed = new ArrayList<>();
+            // Files committed together with each one, as for commits
+            int chgSetSize = change.files.size() - 1;
+            for (int i = 0; i < change.files.size(); i++) {
+                String file = change.files.get(i);
+                if (!file.endsWith(".java"))
+                    continue;
+                Metrics previous = release.getFiles().get(file);
+                long loc = (previous != null ? previous.getLoc() : 0) + change.added[i] - change.deleted[i];
+                // Deleted by the change
+                if (loc <= 0)
+                    continue;
+                Metrics updated = previous != null ? previous.withLoc(loc) : new Metrics(loc, date, date);
+                metrics.add(updated.updateFromCommit(change.author, chgSetSize, change.added[i], change.deleted[i]));
+                changed.add(file);
+            }
+            files.add(changed);
+        }
+        double[] scores = this.model.score(metrics);
+        List<List<Score>> ranked = new ArrayList<>();
+        int from = 0;
+        for (List<String> changed : files) {
+            ranked.add(rank(changed, scores, from));
+            from += changed.size();
+        }
+        Instrumentation.scoring(this.project.getProjectName(), metrics.size(), System.nanoTime() - start);
+        return ranked;
+    }
+
+    // Files a change touches with the lines it adds and deletes in each, as git diff --numstat gives them
+    public static class Change {
+
+        private final String author;
+        private final List<String> files;
+        private final int[] added;
+        private final int[] deleted;
+
+        public Change(String author, List<String> files, int[] added, int[] deleted) {
+            if (files.size() != added.length || files.size() != deleted.length)
+                throw new IllegalArgumentException("Expected added and deleted lines for each of " + files);
+            this.author = author;
+            this.files = Collections.unmodifiableList(new ArrayList<>(files));
+            this.added = added.clone();
+            this.deleted = deleted.clone();
+        }
+
+    }
+
+    public static class Score {
+
+        private final String file;
+        private final double risk;
+
+        private Score(String file, double risk) {
+            this.file = file;
+            this.risk = risk;
+        }
+
+        public String getFile() {
+            return this.file;
+        }
+
+        public double getRisk() {
+            return this.risk;
+        }
+
+    }
+
+}
@@ -0,0 +1,176 @@
+package it.lorenzoval.deliverable2;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Output of every stage of a project, each one stored along with the key of the inputs it was computed from, so that
+// a rerun picks up after the last stage whose inputs did not change
+public class StageCheckpoints {
+
+    private static final Logger logger = Logger.getLogger(StageCheckpoints.class.getName());
+    private static final String EXTENSION = ".ser";
+    private static final String ISSUES_FILE = "issues.key";
+    private final File directory;
+    // Kept in memory as well when resident: the keys of the stages and the latest snapshot saved
+    private final Map<Stage, String> keys;
+    private Stage latestStage;
+    private Snapshot latest;
+
+    public StageCheckpoints(File directory) throws IOException {
+        this(directory, false);
+    }
+
+    private StageCheckpoints(File directory, boolean resident) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Unable to create checkpoint directory " + directory);
+        this.directory = directory;
+        this.keys = resident ? new EnumMap<>(Stage.class) : null;
+    }
+
+    public static StageCheckpoints forProject(Project project) throws IOException {
+        ResidentState state = ResidentState.of(project);
+        return state != null ? state.getCheckpoints() : new StageCheckpoints(directoryFor(project));
+    }
+
+    static StageCheckpoints resident(Project project) throws IOException {
+        return new StageCheckpoints(directoryFor(project), true);
+    }
+
+    private static File directoryFor(Project project) {
+        return new File(project.getProjectName() + "_checkpoints");
+    }
+
+    private File fileFor(Stage stage) {
+        return new File(this.directory, stage.name().toLowerCase(Locale.ROOT) + EXTENSION);
+    }
+
+    // Reads the key only, the snapshot after it is left alone
+    public synchronized boolean isValid(Stage stage, String key) {
+        if (this.keys != null && this.keys.containsKey(stage))
+            return this.keys.get(stage).equals(key);
+        File file = fileFor(stage);
+        if (!file.isFile())
+            return false;
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return in.readUTF().equals(key);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Discarding unreadable checkpoint {0}", file.getName());
+            return false;
+        }
+    }
+
+    // Null when the stage has to run again
+    public synchronized Snapshot load(Stage stage, String key) {
+        if (stage == this.latestStage && key.equals(this.keys.get(stage))) {
+            Snapshot snapshot = this.latest;
+            // The stages after it fill in the snapshot they resume from, which then no longer matches its key
+            if (stage != Stage.LABELS) {
+                this.latestStage = null;
+                this.latest = null;
+            }
+            return snapshot;
+        }
+        File file = fileFor(stage);
+        if (!file.isFile())
+            return null;
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (!in.readUTF().equals(key))
+                return null;
+            return (Snapshot) in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            // Outdated classes or a torn file are just a miss
+            logger.log(Level.WARNING, "Discarding unreadable checkpoint {0}", file.getName());
+            return null;
+        }
+    }
+
+    // Stages with nothing to hand over to the next one only record their key
+    public synchronized void save(Stage stage, String key, Snapshot snapshot) throws IOException {
+        File file = fileFor(stage);
+        File temp = File.createTempFile(stage.name().toLowerCase(Locale.ROOT), ".tmp", this.directory);
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeUTF(key);
+            out.writeObject(snapshot);
+        }
+        // Rename only once fully written, so that a crash never leaves a truncated checkpoint behind
+        if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file)))
+            throw new IOException("Unable to store checkpoint " + file);
+        logger.log(Level.FINE, "Stored checkpoint {0}", file.getName());
+        if (this.keys != null) {
+            this.keys.put(stage, key);
+            if (snapshot != null) {
+                this.latestStage = stage;
+                this.latest = snapshot;
+            }
+        }
+    }
+
+    // Fingerprint of the issues last fetched from JIRA, which keys the issue stage and the ones after it. Null when
+    // none was stored or it is older than the given age, that is when JIRA has to be asked again
+    public synchronized String loadIssues(long maxAgeMillis) {
+        File file = new File(this.directory, ISSUES_FILE);
+        if (!file.isFile() || System.currentTimeMillis() - file.lastModified() > maxAgeMillis)
+            return null;
+        try {
+            return FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Discarding unreadable checkpoint {0}", file.getName());
+            return null;
+        }
+    }
+
+    // Stored even when unchanged, as its age is the time of the latest fetch
+    public synchronized void saveIssues(String fingerprint) throws IOException {
+        FileUtils.writeStringToFile(new File(this.directory, ISSUES_FILE), fingerprint, StandardCharsets.UTF_8);
+    }
+
+    // Latest snapshot kept in memory, null when not resident or none was saved since
+    public synchronized Snapshot getLatest() {
+        return this.latest;
+    }
+
+    public enum Stage {
+        RELEASES, FILES, COMMITS, ISSUES, LABELS, DATASET, EVALUATION, COMMIT_DATASET
+    }
+
+    // Releases with their files and commits, and the bugs pointing into them: written as a single graph so that
+    // issues keep referring to the very same releases once read back
+    public static class Snapshot implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+        private final ReleasesList releasesList;
+        private final List<Issue> bugs;
+
+        public Snapshot(ReleasesList releasesList, List<Issue> bugs) {
+            this.releasesList = releasesList;
+            this.bugs = bugs;
+        }
+
+        public ReleasesList getReleasesList() {
+            return this.releasesList;
+        }
+
+        // Null before the issues stage
+        public List<Issue> getBugs() {
+            return this.bugs;
+        }
+
+    }
+
+}
@@ -1,10 +0,0 @@
-package it.lorenzoval.deliverable2;
-
-public class Syncope extends Project {
-
-    public Syncope() {
-        super("https://github.com/apache/syncope", "syncope", "syncope-{0}",
-                0.01);
-    }
-
-}
@@ -0,0 +1,250 @@
+package it.lorenzoval.deliverable2;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Injected versions of bugs as SZZ finds them: the lines the fixes of a bug delete or change were last touched by the
+// commits that introduced it, and the earliest release among theirs is the injected one. Diffs are read once per fix
+// and blames once per version of a file, however many fixes touch it, both on a bounded pool. Blames are kept in the
+// cache of the project, so that a later run only blames the files of new fixes. Bugs SZZ finds nothing for, such as
+// the ones only adding code, keep the affected versions JIRA or proportion gave them
+public class SzzEngine {
+
+    private static final Logger logger = Logger.getLogger(SzzEngine.class.getName());
+    private static final int MAX_THREADS = 8;
+    private static final String OLD_FILE = "--- a/";
+
+    private SzzEngine() {
+    }
+
+    public static void apply(Project project, ReleasesList releasesList, List<Issue> bugs)
+            throws IOException, InterruptedException {
+        // Release of every commit mined, and the fix commits of each bug
+        Map<String, Issue> byKey = new HashMap<>();
+        for (Issue bug : bugs)
+            byKey.put(bug.getKey().toUpperCase(Locale.ROOT), bug);
+        List<Release> releases = new ArrayList<>(releasesList.getMain());
+        releases.addAll(releasesList.getDropped());
+        Map<String, Release> releaseOf = new HashMap<>();
+        Map<Issue, List<String>> fixes = new HashMap<>();
+        Set<String> fixHashes = new LinkedHashSet<>();
+        for (Release release : releases) {
+            for (Commit commit : release.getCommits()) {
+                releaseOf.put(commit.getHash(), release);
+                for (String issueKey : commit.getIssueKeys()) {
+                    Issue bug = byKey.get(issueKey);
+                    if (bug != null) {
+                        fixes.computeIfAbsent(bug, k -> new ArrayList<>()).add(commit.getHash());
+                        fixHashes.add(commit.getHash());
+                    }
+                }
+            }
+        }
+
+        Map<String, List<Deletion>> deletions = new HashMap<>();
+        Map<String, Blame> blames = new HashMap<>();
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.min(Runtime.getRuntime().availableProcessors(), MAX_THREADS));
+        try {
+            List<String> hashes = new ArrayList<>(fixHashes);
+            List<Callable<List<Deletion>>> diffs = new ArrayList<>();
+            for (String hash : hashes)
+                diffs.add(() -> parseDiff(hash, GitHandler.getDeletions(project, hash)));
+            List<Future<List<Deletion>>> parsed = pool.invokeAll(diffs);
+            // Each version of a file blamed once, at the parent of the first fix that deletes from it
+            Map<String, Deletion> toBlame = new LinkedHashMap<>();
+            for (int i = 0; i < hashes.size(); i++) {
+                List<Deletion> fixDeletions = parsed.get(i).get();
+                deletions.put(hashes.get(i), fixDeletions);
+                for (Deletion deletion : fixDeletions)
+                    toBlame.putIfAbsent(deletion.key, deletion);
+            }
+
+            DiskCache cache = DiskCache.forProject(project);
+            List<Deletion> missing = new ArrayList<>();
+            for (Deletion deletion : toBlame.values()) {
+                Blame blame = (Blame) cache.get(deletion.key);
+                if (blame != null)
+                    blames.put(deletion.key, blame);
+                else
+                    missing.add(deletion);
+            }
+            List<Callable<Blame>> jobs = new ArrayList<>();
+            for (Deletion deletion : missing)
+                jobs.add(() -> Blame.parse(GitHandler.blame(project, deletion.revision, deletion.path)));
+            List<Future<Blame>> blamed = pool.invokeAll(jobs);
+            for (int i = 0; i < missing.size(); i++) {
+                Blame blame = blamed.get(i).get();
+                blames.put(missing.get(i).key, blame);
+                cache.put(missing.get(i).key, blame);
+            }
+            logger.log(Level.INFO, "Blamed {0} files for {1} fixes of {2}, {3} of them cached",
+                    new Object[]{toBlame.size(), hashes.size(), project.getProjectName(),
+                            toBlame.size() - missing.size()});
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to blame the fixes of " + project.getProjectName(), e.getCause());
+        } catch (IOException | InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            // Only the cache throws anything else
+            throw new IOException("Unable to cache the blames of " + project.getProjectName(), e);
+        } finally {
+            pool.shutdown();
+        }
+
+        int found = 0;
+        for (Map.Entry<Issue, List<String>> entry : fixes.entrySet()) {
+            Issue bug = entry.getKey();
+            Release injected = null;
+            for (String hash : entry.getValue())
+                for (Deletion deletion : deletions.get(hash))
+                    injected = earliest(injected, blames.get(deletion.key), deletion.lines, releaseOf);
+            Release fixed = bug.getFixedVersion();
+            if (injected != null && injected.getId() <= fixed.getId()) {
+                bug.setAffectedVersions(releasesList.getReleasesBetween(injected.getId(), fixed.getId()));
+                found++;
+            }
+        }
+        logger.log(Level.INFO, "Injected versions of {0} out of {1} bugs of {2} found by SZZ",
+                new Object[]{found, bugs.size(), project.getProjectName()});
+    }
+
+    private static Release earliest(Release injected, Blame blame, List<Integer> lines,
+                                    Map<String, Release> releaseOf) {
+        for (int line : lines) {
+            Release release = releaseOf.get(blame.commitAt(line));
+            if (release != null && (injected == null || release.getId() < injected.getId()))
+                injected = release;
+        }
+        return injected;
+    }
+
+    // Blank lines and comments do not make a bug
+    private static boolean isCode(String line) {
+        String trimmed = line.trim();
+        return !trimmed.isEmpty() && !trimmed.startsWith("//") && !trimmed.startsWith("/*") &&
+                !trimmed.startsWith("*");
+    }
+
+    private static List<Deletion> parseDiff(String hash, String diff) {
+        List<Deletion> deletions = new ArrayList<>();
+        String blob = null;
+        String path = null;
+        Deletion current = null;
+        int line = 0;
+        boolean inHeader = false;
+        for (String text : diff.split("\n")) {
+            if (text.startsWith("diff --git ")) {
+                blob = null;
+                path = null;
+                current = null;
+                inHeader = true;
+            } else if (inHeader) {
+                if (text.startsWith("index "))
+                    blob = text.substring("index ".length(), text.indexOf(".."));
+                // Absent for new files, quoted for unusual names, neither is blamed
+                else if (text.startsWith(OLD_FILE))
+                    path = text.substring(OLD_FILE.length());
+                else if (text.startsWith("@@"))
+                    inHeader = false;
+            }
+            if (text.startsWith("@@")) {
+                // @@ -start[,count] +start[,count] @@
+                int end = text.indexOf(' ', 4);
+                int comma = text.indexOf(',', 4);
+                line = Integer.parseInt(text.substring(4, comma > 0 && comma < end ? comma : end));
+            } else if (!inHeader && blob != null && path != null && text.startsWith("-")) {
+                if (isCode(text.substring(1))) {
+                    if (current == null) {
+                        current = new Deletion(blob, path, hash + "^");
+                        deletions.add(current);
+                    }
+                    current.lines.add(line);
+                }
+                line++;
+            }
+        }
+        return deletions;
+    }
+
+    // Lines of a version of a file that a fix deletes, one based
+    private static class Deletion {
+
+        private final String key;
+        private final String path;
+        private final String revision;
+        private final List<Integer> lines;
+
+        private Deletion(String blob, String path, String revision) {
+            this.key = DatasetFingerprint.combine("blame", blob, path);
+            this.path = path;
+            this.revision = revision;
+            this.lines = new ArrayList<>();
+        }
+
+    }
+
+    // Commit of each line of a version of a file, as an index into the distinct commits of the file
+    private static class Blame implements DiskCache.Immutable {
+
+        private static final long serialVersionUID = 1L;
+        private final String[] commits;
+        private final int[] lines;
+
+        private Blame(String[] commits, int[] lines) {
+            this.commits = commits;
+            this.lines = lines;
+        }
+
+        // Every line is introduced by a header of hash, original line, final line and, for the first line of a
+        // group, its size, then metadata for a commit not seen yet, then the line itself after a tab
+        private static Blame parse(String porcelain) {
+            Map<String, Integer> indexes = new LinkedHashMap<>();
+            List<Integer> byLine = new ArrayList<>();
+            for (String text : porcelain.split("\n")) {
+                if (text.length() < 40 || text.charAt(0) == '\t' || (text.length() > 40 && text.charAt(40) != ' '))
+                    continue;
+                String hash = text.substring(0, 40);
+                if (!isHash(hash))
+                    continue;
+                String[] fields = text.split(" ");
+                int line = Integer.parseInt(fields[2]);
+                while (byLine.size() < line)
+                    byLine.add(-1);
+                byLine.set(line - 1, indexes.computeIfAbsent(hash, k -> indexes.size()));
+            }
+            int[] lines = new int[byLine.size()];
+            for (int i = 0; i < lines.length; i++)
+                lines[i] = byLine.get(i);
+            return new Blame(indexes.keySet().toArray(new String[0]), lines);
+        }
+
+        private static boolean isHash(String text) {
+            for (int i = 0; i < text.length(); i++)
+                if (Character.digit(text.charAt(i), 16) < 0)
+                    return false;
+            return true;
+        }
+
+        private String commitAt(int line) {
+            return line >= 1 && line <= this.lines.length && this.lines[line - 1] >= 0 ?
+                    this.commits[this.lines[line - 1]] : null;
+        }
+
+    }
+
+}
@@ -0,0 +1,91 @@
+package it.lorenzoval.deliverable2;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+public class WalkForwardFolds {
+
+    private static final int RELEASE_INDEX = 0;
+    private final Instances dataset;
+    private final int numReleases;
+    // offsets[r] is the index of the first instance of release r, offsets[numReleases + 1] the dataset size
+    private final int[] offsets;
+    // buggyPrefix[k] is the number of buggy instances among the first k ones
+    private final int[] buggyPrefix;
+    private final Instances trainingSet;
+    private int trainingReleases;
+
+    public WalkForwardFolds(Instances dataset) {
+        this.dataset = dataset;
+        // Get number of releases by looking at last instance of dataset
+        this.numReleases = (int) dataset.lastInstance().value(RELEASE_INDEX);
+        this.offsets = new int[this.numReleases + 2];
+        this.buggyPrefix = new int[dataset.size() + 1];
+        int release = 0;
+        for (int k = 0; k < dataset.size(); k++) {
+            Instance instance = dataset.get(k);
+            int current = (int) instance.value(RELEASE_INDEX);
+            if (current < release)
+                throw new IllegalArgumentException("Dataset is not sorted by release at instance " + k);
+            // Releases with no instances get an empty range
+            while (release < current)
+                this.offsets[++release] = k;
+            this.buggyPrefix[k + 1] = this.buggyPrefix[k] + isBuggy(instance);
+        }
+        this.offsets[this.numReleases + 1] = dataset.size();
+        this.trainingSet = new Instances(dataset, this.offsets[this.numReleases + 1]);
+        this.trainingReleases = 0;
+    }
+
+    private static int isBuggy(Instance instance) {
+        // Yes is the first label of Buggy
+        return (int) instance.value(instance.numAttributes() - 1) ^ 1;
+    }
+
+    public int getNumReleases() {
+        return this.numReleases;
+    }
+
+    public int getTrainingSize(int release) {
+        return this.offsets[release];
+    }
+
+    public int getTestingSize(int release) {
+        return this.offsets[release + 1] - this.offsets[release];
+    }
+
+    public int getBuggyInTraining(int release) {
+        return this.buggyPrefix[this.offsets[release]];
+    }
+
+    public int getBuggyInTesting(int release) {
+        return this.buggyPrefix[this.offsets[release + 1]] - this.buggyPrefix[this.offsets[release]];
+    }
+
+    // Releases [1, release - 1]: the same backing set is extended in place from one fold to the next, so folds must
+    // be visited in increasing order and the returned set must not be modified or kept past its fold
+    public Instances getTrainingSet(int release) {
+        if (release <= this.trainingReleases)
+            throw new IllegalStateException("Folds must be visited in increasing release order");
+        for (int k = this.offsets[this.trainingReleases + 1]; k < this.offsets[release]; k++)
+            this.trainingSet.add(this.dataset.get(k));
+        this.trainingReleases = release - 1;
+        return this.trainingSet;
+    }
+
+    // Training set of a fold for callers asking for each fold many times, such as workers: the backing set while
+    // folds are visited in order, an independent copy for a fold already left behind
+    public Instances getSharedTrainingSet(int release) {
+        return release > this.trainingReleases ? getTrainingSet(release) : getTrainingCopy(release);
+    }
+
+    // Independent copy of releases [1, release - 1], safe to share with other threads while folds move on
+    public Instances getTrainingCopy(int release) {
+        return new Instances(this.dataset, 0, this.offsets[release]);
+    }
+
+    public Instances getTestingSet(int release) {
+        return new Instances(this.dataset, this.offsets[release], getTestingSize(release));
+    }
+
+}
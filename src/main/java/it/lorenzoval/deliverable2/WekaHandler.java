@@ -1,28 +1,38 @@
 package it.lorenzoval.deliverable2;
 
 import org.apache.commons.io.FileUtils;
+import weka.attributeSelection.AttributeSelection;
 import weka.attributeSelection.BestFirst;
 import weka.attributeSelection.CfsSubsetEval;
+import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Classifier;
 import weka.classifiers.CostMatrix;
 import weka.classifiers.bayes.NaiveBayes;
+import weka.classifiers.bayes.NaiveBayesUpdateable;
 import weka.classifiers.evaluation.Evaluation;
 import weka.classifiers.lazy.IBk;
 import weka.classifiers.meta.CostSensitiveClassifier;
-import weka.classifiers.trees.RandomForest;
-import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.OptionHandler;
+import weka.core.SelectedTag;
+import weka.core.Utils;
 import weka.core.converters.CSVLoader;
 import weka.filters.Filter;
-import weka.filters.supervised.attribute.AttributeSelection;
 import weka.filters.supervised.instance.Resample;
 import weka.filters.supervised.instance.SMOTE;
 import weka.filters.supervised.instance.SpreadSubsample;
+import weka.filters.unsupervised.attribute.Remove;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,26 +40,16 @@ public class WekaHandler {
 
     private static final Logger logger = Logger.getLogger(WekaHandler.class.getName());
     private static final String FORMAT = "%n%-15.15s%-15.15s%-15.15s%n";
+    // BestFirst.SELECTION_BIDIRECTIONAL is not public
+    private static final int BIDIRECTIONAL = 2;
     private WekaHandler() {
     }
 
-    private static CostMatrix createCostMatrix() {
-        CostMatrix costMatrix = new CostMatrix(2);
-        costMatrix.setCell(0, 0, 0.0);
-        costMatrix.setCell(1, 0, 1.0);
-        costMatrix.setCell(0, 1, 10.0);
-        costMatrix.setCell(1, 1, 0.0);
-        return costMatrix;
-    }
-
-    private static void evaluateResults(WekaResult wekaResult, Instances trainingSet, Instances testingSet,
-                                        Classifier classifier, List<String> lines) throws Exception {
+    private static void evaluateResults(WekaResult wekaResult, Predictions predictions, EvaluationContext context)
+            throws Exception {
         final int classIndex = 0;
 
-        classifier.buildClassifier(trainingSet);
-
-        Evaluation evaluation = new Evaluation(testingSet);
-        evaluation.evaluateModel(classifier, testingSet);
+        Evaluation evaluation = predictions.evaluate();
 
         wekaResult.setTP((int) evaluation.numTruePositives(classIndex));
         wekaResult.setFP((int) evaluation.numFalsePositives(classIndex));
@@ -60,84 +60,208 @@ public class WekaHandler {
         wekaResult.setAuc(evaluation.areaUnderROC(classIndex));
         wekaResult.setKappa(evaluation.kappa());
 
-        lines.add(wekaResult.toCSVLine());
+        context.getResultSink().add(wekaResult);
+        context.getPredictionStore().append(wekaResult, predictions);
+        if (context.isPruning())
+            context.getPruner().record(wekaResult);
+    }
+
+    private static boolean isIncremental(WekaResult wekaResult, EvaluationContext context) {
+        // Only the unsampled, unselected training set grows by appending a release from one fold to the next
+        return context.isIncremental() && EvaluationPlan.NO_SAMPLING.equals(wekaResult.getBalancing())
+                && EvaluationPlan.NO_SELECTION.equals(wekaResult.getFeatureSelection());
+    }
+
+    // Model trained for an incremental cell: NaiveBayes becomes the same model able to learn only the releases added
+    // to the training set since the previous fold. Cells that are not incremental, and the labels of all cells, keep
+    // the plain one
+    private static String incrementalClassName(WekaResult wekaResult, Classifier classifier,
+                                               EvaluationContext context) {
+        return isIncremental(wekaResult, context) && classifier.getClass() == NaiveBayes.class ?
+                NaiveBayesUpdateable.class.getName() : classifier.getClass().getName();
     }
 
-    private static void compareCostSensitivity(WekaResult wekaResult, Instances trainingSet, Instances testingSet,
-                                               Classifier classifier, List<String> lines) throws Exception {
-        wekaResult.setSensitivity("No cost sensitive");
-        evaluateResults(wekaResult, trainingSet, testingSet, classifier, lines);
+    private static Classifier trainBaseModel(WekaResult wekaResult, Instances trainingSet, Classifier classifier,
+                                             EvaluationContext context) throws Exception {
+        if (isIncremental(wekaResult, context))
+            return context.getIncrementalModels().train(AbstractClassifier.forName(
+                    incrementalClassName(wekaResult, classifier, context),
+                    ((OptionHandler) classifier).getOptions()), trainingSet);
+        classifier.buildClassifier(trainingSet);
+        return classifier;
+    }
+
+    // Key of the base model of a cell, which does not depend on the cost matrix: the cells of the plan that only
+    // differ by it share the same base distributions, from which no cost sensitivity and thresholding are derived
+    private static String cellKey(WekaResult wekaResult, Instances trainingSet, Instances testingSet,
+                                  Classifier classifier, EvaluationContext context) {
+        return DatasetFingerprint.combine(context.fingerprint(trainingSet), context.fingerprint(testingSet),
+                DatasetFingerprint.domainsOf(trainingSet), wekaResult.getFeatureSelection(), wekaResult.getBalancing(),
+                incrementalClassName(wekaResult, classifier, context),
+                Utils.joinOptions(((OptionHandler) classifier).getOptions()));
+    }
 
-        CostMatrix costMatrix = createCostMatrix();
+    // Only cost sensitive learning trains a model per cost matrix
+    private static String learningKey(String cellKey, CostMatrix costMatrix) {
+        return DatasetFingerprint.combine(cellKey, EvaluationPlan.SENSITIVE_LEARNING, costMatrix.toMatlab());
+    }
 
-        wekaResult.setSensitivity("Sensitive threshold");
-        CostSensitiveClassifier costSensitiveClassifier = new CostSensitiveClassifier();
-        costSensitiveClassifier.setClassifier(classifier);
-        costSensitiveClassifier.setCostMatrix(costMatrix);
-        costSensitiveClassifier.setMinimizeExpectedCost(true);
-        evaluateResults(wekaResult, trainingSet, testingSet, costSensitiveClassifier, lines);
+    // Trains what the cache does not have yet of the cell: the base model unless base is false, the cost sensitive
+    // one for the matrix when learning is true. Each part is cached under its own key, as a CellResult whose other
+    // part is null
+    private static CellResult trainAndPredict(WekaResult wekaResult, Instances trainingSet, Instances testingSet,
+                                              Classifier classifier, CostMatrix costMatrix, boolean base,
+                                              boolean learning, String key, EvaluationContext context)
+            throws Exception {
+        double[][] baseDistributions = null;
+        double[][] learningDistributions = null;
+        if (NeighbourVoting.supports(classifier, trainingSet)) {
+            // Cost sensitive learning only reweights the votes, so the index of the base model serves both
+            Classifier model = trainBaseModel(wekaResult, trainingSet, classifier, context);
+            CellResult voted = NeighbourVoting.predict((IBk) model, trainingSet, testingSet, costMatrix);
+            baseDistributions = voted.getBaseDistributions();
+            learningDistributions = learning ? voted.getLearningDistributions() : null;
+        } else {
+            if (base)
+                baseDistributions = Predictions.of(trainBaseModel(wekaResult, trainingSet, classifier, context),
+                        testingSet).getDistributions();
+            // Left out when the plan does not ask for it, saving the second training of the cell
+            if (learning) {
+                CostSensitiveClassifier costSensitiveClassifier = new CostSensitiveClassifier();
+                costSensitiveClassifier.setClassifier(classifier);
+                costSensitiveClassifier.setCostMatrix(costMatrix);
+                costSensitiveClassifier.setMinimizeExpectedCost(false);
+                costSensitiveClassifier.buildClassifier(trainingSet);
+                learningDistributions = Predictions.of(costSensitiveClassifier, testingSet).getDistributions();
+            }
+        }
+        if (base)
+            context.getCache().put(key, new CellResult(baseDistributions, null));
+        if (learning)
+            context.getCache().put(learningKey(key, costMatrix), new CellResult(null, learningDistributions));
+        return new CellResult(baseDistributions, learningDistributions);
+    }
 
-        wekaResult.setSensitivity("Sensitive learning");
-        costSensitiveClassifier = new CostSensitiveClassifier();
-        costSensitiveClassifier.setClassifier(classifier);
-        costSensitiveClassifier.setCostMatrix(costMatrix);
-        costSensitiveClassifier.setMinimizeExpectedCost(false);
-        evaluateResults(wekaResult, trainingSet, testingSet, costSensitiveClassifier, lines);
+    private static String sensitivityLabel(String sensitivity, EvaluationPlan.CostSpec costSpec) {
+        return costSpec.getName() != null ? sensitivity + " (" + costSpec.getName() + ")" : sensitivity;
     }
 
-    private static void compareClassifiers(WekaResult wekaResult, Instances trainingSet, Instances testingSet,
-                                           List<String> lines) throws Exception {
-        List<Classifier> classifiers = new ArrayList<>();
-        classifiers.add(new NaiveBayes());
-        classifiers.add(new RandomForest());
-        classifiers.add(new IBk());
+    // Returns the time spent training, none when the cell came from the cache
+    private static long compareCostSensitivity(WekaResult wekaResult, Instances trainingSet, Instances testingSet,
+                                               Classifier classifier, EvaluationPlan.CostSpec costSpec,
+                                               EvaluationContext context) throws Exception {
+        EvaluationPlan plan = context.getSettings().getPlan();
+        boolean learning = plan.includes(EvaluationPlan.SENSITIVE_LEARNING);
+        CostMatrix costMatrix = costSpec.create();
+        // Unchanged fold content and configuration give the same keys, so the cell is not trained again
+        String key = cellKey(wekaResult, trainingSet, testingSet, classifier, context);
+        CellResult baseResult = (CellResult) context.getCache().get(key);
+        CellResult learningResult = learning ?
+                (CellResult) context.getCache().get(learningKey(key, costMatrix)) : null;
+        long trainingTime = 0;
+        if (baseResult == null || learning && learningResult == null) {
+            long start = System.nanoTime();
+            CellResult trained = trainAndPredict(wekaResult, trainingSet, testingSet, classifier, costMatrix,
+                    baseResult == null, learning && learningResult == null, key, context);
+            trainingTime = System.nanoTime() - start;
+            if (baseResult == null)
+                baseResult = trained;
+            if (learning && learningResult == null)
+                learningResult = trained;
+        }
+
+        Predictions predictions = Predictions.of(testingSet, baseResult.getBaseDistributions());
+        if (plan.includes(EvaluationPlan.NO_COST_SENSITIVE)) {
+            wekaResult.setSensitivity(sensitivityLabel(EvaluationPlan.NO_COST_SENSITIVE, costSpec));
+            evaluateResults(wekaResult, predictions, context);
+        }
+
+        // Thresholding only changes the decision rule of the base model, so no need to train it again
+        if (plan.includes(EvaluationPlan.SENSITIVE_THRESHOLD)) {
+            wekaResult.setSensitivity(sensitivityLabel(EvaluationPlan.SENSITIVE_THRESHOLD, costSpec));
+            evaluateResults(wekaResult, predictions.minimizeExpectedCost(costMatrix), context);
+        }
 
-        for (Classifier classifier : classifiers) {
-            String name = classifier.getClass().getName();
-            wekaResult.setClassifier(name.substring(name.lastIndexOf('.') + 1));
-            compareCostSensitivity(wekaResult, trainingSet, testingSet, classifier, lines);
+        if (learning) {
+            wekaResult.setSensitivity(sensitivityLabel(EvaluationPlan.SENSITIVE_LEARNING, costSpec));
+            evaluateResults(wekaResult, Predictions.of(testingSet, learningResult.getLearningDistributions()),
+                    context);
         }
+        return trainingTime;
     }
 
-    private static void compareClassifiersOversampling(WekaResult wekaResult, Instances trainingSet,
-                                                       Instances testingSet, double percentage, List<String> lines) throws Exception {
-        Resample resample = new Resample();
-        resample.setInputFormat(trainingSet);
-        resample.setBiasToUniformClass(1.0);
-        resample.setNoReplacement(false);
-        resample.setSampleSizePercent(percentage);
-        compareClassifiers(wekaResult, trainingSet, testingSet, lines);
+    private static Classifier createClassifier(EvaluationPlan.ClassifierSpec spec, EvaluationContext context)
+            throws Exception {
+        Classifier classifier = AbstractClassifier.forName(spec.getClassName(), spec.getOptions());
+        // Best configuration found for this fold, if any, unless the plan sets the options itself
+        Classifier tuned = context.getTunedClassifier(classifier.getClass().getSimpleName());
+        if (tuned != null && !spec.hasOptions())
+            return AbstractClassifier.makeCopy(tuned);
+        // The neighbour search of the settings, a tree index over the normalised features when asked for
+        if (classifier instanceof IBk && !Arrays.asList(spec.getOptions()).contains("-A"))
+            ((IBk) classifier).setNearestNeighbourSearchAlgorithm(context.getSettings().getNeighbourSearch()
+                    .create());
+        return classifier;
     }
 
-    private static void compareClassifiersUndersampling(WekaResult wekaResult, Instances trainingSet,
-                                                        Instances testingSet, List<String> lines) throws Exception {
-        SpreadSubsample spreadSubsample = new SpreadSubsample();
-        spreadSubsample.setDistributionSpread(1.0);
-        spreadSubsample.setInputFormat(trainingSet);
-        Filter.useFilter(trainingSet, spreadSubsample);
-        compareClassifiers(wekaResult, trainingSet, testingSet, lines);
+    // A fold with a single class, or with as many buggy as clean instances, has nothing to balance, and the filters
+    // would leave it empty or degenerate for the classifiers
+    static boolean needsBalancing(Instances trainingSet) {
+        int[] counts = trainingSet.attributeStats(trainingSet.classIndex()).nominalCounts;
+        return counts[0] > 0 && counts[1] > 0 && counts[0] != counts[1];
     }
 
-    private static void compareClassifiersSmote(WekaResult wekaResult, Instances trainingSet, Instances testingSet,
-                                                double percentage, List<String> lines) throws Exception {
-        SMOTE smote = new SMOTE();
-        smote.setInputFormat(trainingSet);
-        smote.setPercentage(percentage);
-        Filter.useFilter(trainingSet, smote);
-        compareClassifiers(wekaResult, trainingSet, testingSet, lines);
+    private static Instances balance(EvaluationContext context, Instances trainingSet, Filter filter)
+            throws Exception {
+        if (!needsBalancing(trainingSet))
+            return trainingSet;
+        // Keyed by fold content and filter setup, so each balanced set is computed once and reused across runs
+        String key = DatasetFingerprint.combine(context.fingerprint(trainingSet), filter.getClass().getName(),
+                Utils.joinOptions(((OptionHandler) filter).getOptions()));
+        Instances balanced = (Instances) context.getCache().get(key);
+        // The fingerprint leaves out nominal domains, such as the file names, so a set balanced by another run may
+        // have a header that differs from this one: computed again, as its values would be read against the wrong
+        // domains
+        if (balanced != null && !balanced.equalHeaders(trainingSet)) {
+            logger.log(Level.FINE, "Balanced set {0} cached with another header", key);
+            balanced = null;
+        }
+        if (balanced == null) {
+            filter.setInputFormat(trainingSet);
+            balanced = Filter.useFilter(trainingSet, filter);
+            context.getCache().put(key, balanced);
+        }
+        // The key already identifies the content, no need to hash the balanced set again
+        context.setFingerprint(balanced, key);
+        // Shared read-only by all the classifiers of the fold
+        return balanced;
     }
 
-    private static int countBuggyInstances(Instances trainingSet) {
-        int count = 0;
-        for (Instance instance : trainingSet) {
-            count += (int) instance.value(instance.numAttributes() - 1) ^ 1;
+    // Package visible, as are needsBalancing, calculatePercentage and loadCSV, for RiskModel to train as the
+    // evaluation does
+    static Filter balancingFilter(String balancing, double percentage) {
+        switch (balancing) {
+            case EvaluationPlan.OVERSAMPLING:
+                Resample resample = new Resample();
+                resample.setBiasToUniformClass(1.0);
+                resample.setNoReplacement(false);
+                resample.setSampleSizePercent(percentage);
+                return resample;
+            case EvaluationPlan.UNDERSAMPLING:
+                SpreadSubsample spreadSubsample = new SpreadSubsample();
+                spreadSubsample.setDistributionSpread(1.0);
+                return spreadSubsample;
+            case EvaluationPlan.SMOTE:
+                SMOTE smote = new SMOTE();
+                smote.setPercentage(percentage);
+                return smote;
+            default:
+                return null;
         }
-        return count;
     }
 
-    private static double calculatePercentage(Instances trainingSet) {
-        int buggy = countBuggyInstances(trainingSet);
-        int nonBuggy = trainingSet.size() - buggy;
+    static double calculatePercentage(int buggy, int size) {
+        int nonBuggy = size - buggy;
 
         if (nonBuggy > buggy)
             return buggy != 0 ? 100.0 * (nonBuggy - buggy) / buggy : 0;
@@ -145,86 +269,254 @@ public class WekaHandler {
             return nonBuggy != 0 ? 100.0 * (buggy - nonBuggy) / nonBuggy : 0;
     }
 
-    private static void compareBalancing(WekaResult wekaResult, Instances trainingSet, Instances testingSet,
-                                         List<String> lines) throws Exception {
-        double percentage = calculatePercentage(trainingSet);
+    private static String toStartSet(int[] selected, int classIndex) {
+        StringBuilder startSet = new StringBuilder();
+        for (int index : selected) {
+            if (index == classIndex)
+                continue;
+            if (startSet.length() > 0)
+                startSet.append(",");
+            // Ranges are 1-based
+            startSet.append(index + 1);
+        }
+        return startSet.toString();
+    }
+
+    private static int[] selectAttributes(EvaluationContext context, Instances trainingSet) throws Exception {
+        int threads = context.getSettings().getThreads();
+        CfsSubsetEval cfsSubsetEval = new CfsSubsetEval();
+        // Correlations between candidate attributes are computed once up front, in parallel
+        cfsSubsetEval.setPreComputeCorrelationMatrix(true);
+        cfsSubsetEval.setNumThreads(threads);
+        cfsSubsetEval.setPoolSize(threads);
+        BestFirst bestFirst = new BestFirst();
+        int[] previous = context.getPreviousSelection();
+        if (previous != null) {
+            // Warm start from the subset of the previous fold, searching both ways so attributes can also be dropped
+            bestFirst.setStartSet(toStartSet(previous, trainingSet.classIndex()));
+            bestFirst.setDirection(new SelectedTag(BIDIRECTIONAL, BestFirst.TAGS_SELECTION));
+        }
+
+        // Thread settings are left out of the key as they do not change the outcome
+        String key = DatasetFingerprint.combine(context.fingerprint(trainingSet), cfsSubsetEval.getClass().getName(),
+                bestFirst.getClass().getName(), Utils.joinOptions(bestFirst.getOptions()));
+        int[] selected = (int[]) context.getCache().get(key);
+        if (selected == null) {
+            AttributeSelection attributeSelection = new AttributeSelection();
+            attributeSelection.setEvaluator(cfsSubsetEval);
+            attributeSelection.setSearch(bestFirst);
+            attributeSelection.SelectAttributes(trainingSet);
+            selected = attributeSelection.selectedAttributes();
+            context.getCache().put(key, selected);
+        }
+        context.setPreviousSelection(selected);
 
-        wekaResult.setBalancing("No sampling");
-        compareClassifiers(wekaResult, trainingSet, testingSet, lines);
+        if (logger.isLoggable(Level.INFO)) {
+            StringBuilder names = new StringBuilder();
+            for (int index : selected)
+                names.append(" ").append(trainingSet.attribute(index).name());
+            logger.log(Level.INFO, "Selected attributes:{0}", names);
+        }
+        return selected;
+    }
 
-        wekaResult.setBalancing("Oversampling");
-        compareClassifiersOversampling(wekaResult, trainingSet, testingSet, percentage, lines);
+    private static Instances[] applySelection(int[] selected, Instances trainingSet, Instances testingSet)
+            throws Exception {
+        Remove remove = new Remove();
+        remove.setAttributeIndicesArray(selected);
+        remove.setInvertSelection(true);
+        remove.setInputFormat(trainingSet);
+        return new Instances[]{Filter.useFilter(trainingSet, remove), Filter.useFilter(testingSet, remove)};
+    }
 
-        wekaResult.setBalancing("Undersampling");
-        compareClassifiersUndersampling(wekaResult, trainingSet, testingSet, lines);
+    private static String labelOf(EvaluationPlan.Job job, Classifier classifier) {
+        return job.getClassifier().getName() != null ? job.getClassifier().getName() :
+                classifier.getClass().getSimpleName();
+    }
 
-        wekaResult.setBalancing("SMOTE");
-        compareClassifiersSmote(wekaResult, trainingSet, testingSet, percentage, lines);
+    // Sends the cells of the fold that are still to be trained to the worker processes and waits for them. Returns
+    // the time the workers spent training, by job index, as the pass of the coordinator then finds them cached
+    private static Map<Integer, Long> trainOnWorkers(WekaResult wekaResult, EvaluationContext context,
+                                                     FoldSelection selection, int release, double percentage)
+            throws Exception {
+        EvaluationPlan plan = context.getSettings().getPlan();
+        boolean learning = plan.includes(EvaluationPlan.SENSITIVE_LEARNING);
+        List<CellTask> tasks = new ArrayList<>();
+        Map<CellTask, Integer> jobs = new HashMap<>();
+        // Base models already sent, jobs only differing by their cost matrix share them
+        Set<String> bases = new HashSet<>();
+        for (EvaluationPlan.Job job : plan.jobs()) {
+            Classifier classifier = createClassifier(job.getClassifier(), context);
+            wekaResult.setFeatureSelection(job.getFeatureSelection());
+            wekaResult.setBalancing(job.getBalancing());
+            wekaResult.setClassifier(labelOf(job, classifier));
+            // Incremental models live in this process only
+            if (context.isPruning() && context.getPruner().isPruned(wekaResult) ||
+                    context.getResultSink().isCompleted(release + "," + job.getIndex()) ||
+                    isIncremental(wekaResult, context))
+                continue;
+            String[] options = ((OptionHandler) classifier).getOptions();
+            boolean base = bases.add(DatasetFingerprint.combine(job.getFeatureSelection(), job.getBalancing(),
+                    classifier.getClass().getName(), Utils.joinOptions(options)));
+            if (!base && !learning)
+                continue;
+            int[] selected = EvaluationPlan.BEST_FIRST.equals(job.getFeatureSelection()) ?
+                    selection.get(context) : null;
+            CellTask task = new CellTask(release, job.getFeatureSelection(), selected, job.getBalancing(), percentage,
+                    classifier.getClass().getName(), options, job.getCostMatrix().create(), base, learning);
+            tasks.add(task);
+            jobs.put(task, job.getIndex());
+        }
+        Map<Integer, Long> trainingTimes = new HashMap<>();
+        for (Map.Entry<CellTask, Long> entry : context.getWorkerPool().run(tasks).entrySet())
+            trainingTimes.put(jobs.get(entry.getKey()), entry.getValue());
+        // Workers do not evict, what they stored counts against the limit from here
+        context.getCache().evict();
+        return trainingTimes;
     }
 
-    private static void compareTechniques(WekaResult wekaResult, Instances trainingSet, Instances testingSet,
-                                          List<String> lines) throws Exception {
-        // No feature selection
-        wekaResult.setFeatureSelection("No selection");
-        compareBalancing(wekaResult, trainingSet, testingSet, lines);
+    static CellResult trainCell(DiskCache cache, WalkForwardFolds folds, CellTask task) throws Exception {
+        return trainCell(new EvaluationContext(cache, null, new EvaluationSettings()), folds, task);
+    }
 
-        // BestFirst
-        wekaResult.setFeatureSelection("BestFirst");
-        AttributeSelection attributeSelection = new AttributeSelection();
-        CfsSubsetEval cfsSubsetEval = new CfsSubsetEval();
-        BestFirst bestFirst = new BestFirst();
-        attributeSelection.setEvaluator(cfsSubsetEval);
-        attributeSelection.setSearch(bestFirst);
-        attributeSelection.setInputFormat(trainingSet);
-        Instances training = Filter.useFilter(trainingSet, attributeSelection);
-        Instances testing = Filter.useFilter(testingSet, attributeSelection);
+    // Worker side: same training sets, filters and cache key as the coordinator, so that its pass finds the cell.
+    // Returns the trained cell, or null when the cache already had it. Cells come fold by fold, so the training set
+    // is extended in place and shared by the cells of a fold, as on the coordinator; the context must be started on
+    // a new fold whenever the release changes, as its fingerprints would be stale
+    static CellResult trainCell(EvaluationContext context, WalkForwardFolds folds, CellTask task) throws Exception {
+        DiskCache cache = context.getCache();
+        Instances trainingSet = folds.getSharedTrainingSet(task.getRelease());
+        Instances testingSet = folds.getTestingSet(task.getRelease());
+        if (task.getSelected() != null) {
+            Instances[] selected = applySelection(task.getSelected(), trainingSet, testingSet);
+            trainingSet = selected[0];
+            testingSet = selected[1];
+        }
+        Filter filter = balancingFilter(task.getBalancing(), task.getPercentage());
+        if (filter != null)
+            trainingSet = balance(context, trainingSet, filter);
+        Classifier classifier = AbstractClassifier.forName(task.getClassifierClass(), task.getClassifierOptions());
 
-        compareBalancing(wekaResult, training, testing, lines);
+        WekaResult wekaResult = new WekaResult();
+        wekaResult.setFeatureSelection(task.getFeatureSelection());
+        wekaResult.setBalancing(task.getBalancing());
+        String key = cellKey(wekaResult, trainingSet, testingSet, classifier, context);
+        boolean base = task.isBase() && !cache.contains(key);
+        boolean learning = task.isLearning() && !cache.contains(learningKey(key, task.getCostMatrix()));
+        if (!base && !learning)
+            return null;
+        return trainAndPredict(wekaResult, trainingSet, testingSet, classifier, task.getCostMatrix(), base, learning,
+                key, context);
     }
 
-    private static List<String> walkForward(WekaResult wekaResult, Instances dataset) throws Exception {
-        List<String> lines = new ArrayList<>();
-        lines.add(WekaResult.CSV_HEADER);
+    private static void evaluateFold(WekaResult wekaResult, EvaluationContext context, int release,
+                                     Instances trainingSet, Instances testingSet, double percentage)
+            throws Exception {
+        FoldSelection selection = new FoldSelection(trainingSet);
+        Map<Integer, Long> workerTimes = context.getWorkerPool() != null ?
+                trainOnWorkers(wekaResult, context, selection, release, percentage) :
+                Collections.<Integer, Long>emptyMap();
+
+        // Consecutive jobs share feature selection and balancing, whose sets are only computed for the first job
+        // actually needing them
+        String featureSelection = null;
+        String balancing = null;
+        Instances selectedTraining = null;
+        Instances selectedTesting = null;
+        Instances balancedTraining = null;
+        for (EvaluationPlan.Job job : context.getSettings().getPlan().jobs()) {
+            Classifier classifier = createClassifier(job.getClassifier(), context);
+            wekaResult.setFeatureSelection(job.getFeatureSelection());
+            wekaResult.setBalancing(job.getBalancing());
+            wekaResult.setClassifier(labelOf(job, classifier));
+            // Configurations that kept scoring low on the earlier folds are not evaluated on the later, larger ones
+            if (context.isPruning() && context.getPruner().isPruned(wekaResult)) {
+                context.getPruner().skipped(wekaResult, trainingSet.size());
+                continue;
+            }
+
+            if (!job.getFeatureSelection().equals(featureSelection)) {
+                featureSelection = job.getFeatureSelection();
+                balancing = null;
+                selectedTraining = trainingSet;
+                selectedTesting = testingSet;
+                if (EvaluationPlan.BEST_FIRST.equals(featureSelection)) {
+                    Instances[] selected = applySelection(selection.get(context), trainingSet, testingSet);
+                    selectedTraining = selected[0];
+                    selectedTesting = selected[1];
+                }
+            }
+            // Done by an interrupted run: only its results are replayed to the pruner. The feature selection above
+            // is still run, from the cache, as it warm starts the one of the next fold.
+            String cellId = release + "," + job.getIndex();
+            if (context.getResultSink().isCompleted(cellId)) {
+                if (context.isPruning())
+                    for (String row : context.getResultSink().getRows(cellId))
+                        context.getPruner().record(WekaResult.fromCSVLine(row));
+                continue;
+            }
+            if (!job.getBalancing().equals(balancing)) {
+                balancing = job.getBalancing();
+                Filter filter = balancingFilter(balancing, percentage);
+                balancedTraining = filter != null ? balance(context, selectedTraining, filter) : selectedTraining;
+            }
+
+            long start = System.nanoTime();
+            long trainingTime = compareCostSensitivity(wekaResult, balancedTraining, selectedTesting, classifier,
+                    job.getCostMatrix(), context);
+            long cellTime = System.nanoTime() - start;
+            // Trained by a worker, this pass only read it back
+            long workerTime = workerTimes.getOrDefault(job.getIndex(), 0L);
+            if (context.isPruning())
+                context.getPruner().recordTime(wekaResult, workerTime + cellTime, trainingSet.size());
+            Instrumentation.cell(wekaResult.getDataset(), release, job.getFeatureSelection() + "|" +
+                    job.getBalancing() + "|" + wekaResult.getClassifier(), workerTime + trainingTime,
+                    cellTime - trainingTime);
+            context.getResultSink().completeCell(cellId);
+        }
+    }
 
-        // Get number of releases by looking at last instance of dataset
-        int numReleases = (int) dataset.lastInstance().value(0);
+    private static void walkForward(WekaResult wekaResult, EvaluationContext context, Instances dataset)
+            throws Exception {
+        WalkForwardFolds folds = new WalkForwardFolds(dataset);
+        int numReleases = folds.getNumReleases();
         logger.log(Level.INFO, "Number of releases in the dataset: {0}", numReleases);
+        EvaluationPlan plan = context.getSettings().getPlan();
         // Skip first iteration because it has empty training set
-        for (int i = 2; i <= numReleases; i++) {
-            Instances trainingSet = new Instances(dataset, 0);
-            Instances testingSet = new Instances(dataset, 0);
-
-            for (Instance instance : dataset) {
-                if (instance.value(0) < i)
-                    trainingSet.add(instance);
-                else if (instance.value(0) == i)
-                    testingSet.add(instance);
-                else
-                    break;
+        for (int i = plan.getFirstRelease(); i <= Math.min(numReleases, plan.getLastRelease()); i++) {
+            Instances trainingSet = folds.getTrainingSet(i);
+            Instances testingSet = folds.getTestingSet(i);
+            context.startFold(testingSet);
+            // The first fold has a single training release, so nothing to validate candidates on
+            if (context.getSettings().getHyperparameterSearch() != EvaluationSettings.Search.NONE && i > 2)
+                context.setTunedClassifiers(HyperparameterSearch.search(context, wekaResult.getDataset(), i,
+                        folds.getTrainingCopy(i - 1), folds.getTestingSet(i - 1)));
+
+            int trainingSetSize = folds.getTrainingSize(i);
+            int testingSetSize = folds.getTestingSize(i);
+            if (logger.isLoggable(Level.INFO)) {
+                String message = String.format(FORMAT, "", "Training set:", "Testing set:")
+                        + String.format(FORMAT, "Releases:", i == 2 ? (i - 1) : "[1, " + (i - 1) + "]", i)
+                        + String.format(FORMAT, "Size:", trainingSetSize, testingSetSize);
+                logger.log(Level.INFO, message);
             }
 
-            String message = String.format(FORMAT, "", "Training set:", "Testing set:")
-                    + String.format(FORMAT, "Releases:", i == 2 ? (i - 1) : "[1, " + (i - 1) + "]", i)
-                    + String.format(FORMAT, "Size:", trainingSet.size(), testingSet.size());
-            logger.log(Level.INFO, message);
-
-            int trainingSetSize = trainingSet.size();
-            int testingSetSize = testingSet.size();
             wekaResult.setNumTrainingReleases(trainingSetSize);
             wekaResult.setPercentTrainingReleases(100 * trainingSetSize / (trainingSetSize + testingSetSize));
-            int buggy = countBuggyInstances(trainingSet);
+            int buggy = folds.getBuggyInTraining(i);
             int buggyPercent = buggy != 0 ? 100 * buggy / trainingSetSize : 0;
             wekaResult.setPercentDefectiveInTraining(buggyPercent);
-            buggy = countBuggyInstances(testingSet);
+            double percentage = calculatePercentage(buggy, trainingSetSize);
+            buggy = folds.getBuggyInTesting(i);
             buggyPercent = buggy != 0 ? 100 * buggy / testingSetSize : 0;
             wekaResult.setPercentDefectiveInTesting(buggyPercent);
-            compareTechniques(wekaResult, trainingSet, testingSet, lines);
+            evaluateFold(wekaResult, context, i, trainingSet, testingSet, percentage);
+            if (context.isPruning())
+                context.getPruner().endFold(i);
         }
-
-        return lines;
     }
 
-    private static Instances loadCSV(Project project) throws IOException {
+    static Instances loadCSV(Project project) throws IOException {
         CSVLoader loader = new CSVLoader();
         loader.setSource(new File(project.getProjectName() + "_metrics.csv"));
         // Set Yes as positive for Buggy
@@ -233,12 +525,60 @@ public class WekaHandler {
     }
 
     public static void evaluateDataset(Project project) throws Exception {
-        File outFile = new File(project.getProjectName() + "_weka.csv");
+        evaluateDataset(project, new EvaluationSettings());
+    }
+
+    public static void evaluateDataset(Project project, EvaluationSettings settings) throws Exception {
         Instances dataset = loadCSV(project);
         dataset.setClassIndex(dataset.numAttributes() - 1);
         WekaResult wekaResult = new WekaResult();
         wekaResult.setDataset(project.getProjectName());
-        FileUtils.writeLines(outFile, walkForward(wekaResult, dataset));
+        // Rows are written as each cell completes, and a later run with the same data and settings resumes them
+        String runKey = DatasetFingerprint.combine(DatasetFingerprint.of(dataset), settings.describe());
+        WorkerPool workerPool = null;
+        try (ResultSink resultSink = ResultSink.open(project, runKey)) {
+            EvaluationContext context = new EvaluationContext(DiskCache.forProject(project), resultSink, settings);
+            if (settings.getWorkers() > 0) {
+                File snapshot = DatasetSnapshot.forProject(project);
+                DatasetSnapshot.write(dataset, snapshot);
+                workerPool = WorkerPool.start(settings.getWorkers(), settings.getWorkerBindAddress(), snapshot,
+                        DiskCache.directoryFor(project), settings.getWorkerTaskTimeoutSeconds() * 1000);
+                context.setWorkerPool(workerPool);
+            }
+            walkForward(wekaResult, context, dataset);
+            if (!context.getHyperparameterLines().isEmpty()) {
+                List<String> lines = new ArrayList<>();
+                lines.add(HyperparameterSearch.CSV_HEADER);
+                lines.addAll(context.getHyperparameterLines());
+                FileUtils.writeLines(new File(project.getProjectName() + "_hyperparameters.csv"), lines);
+            }
+            if (context.isPruning())
+                FileUtils.writeLines(new File(project.getProjectName() + "_pruning.csv"),
+                        context.getPruner().report(project.getProjectName()));
+        } finally {
+            if (workerPool != null)
+                workerPool.close();
+        }
+        PredictionMetrics.writeToCSV(project);
+    }
+
+    // Attributes selected on the training set of a fold, searched at most once per fold as the search of the next
+    // fold starts from them
+    private static class FoldSelection {
+
+        private final Instances trainingSet;
+        private int[] selected;
+
+        private FoldSelection(Instances trainingSet) {
+            this.trainingSet = trainingSet;
+        }
+
+        private int[] get(EvaluationContext context) throws Exception {
+            if (this.selected == null)
+                this.selected = selectAttributes(context, this.trainingSet);
+            return this.selected;
+        }
+
     }
 
 }
@@ -1,6 +1,8 @@
 package it.lorenzoval.deliverable2;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 
 public class WekaResult {
 
@@ -26,6 +28,10 @@ public class WekaResult {
     private double auc;
     private double kappa;
 
+    public String getDataset() {
+        return this.dataset;
+    }
+
     public void setDataset(String dataset) {
         this.dataset = dataset;
     }
@@ -46,18 +52,34 @@ public class WekaResult {
         this.percentDefectiveInTesting = percentDefectiveInTesting;
     }
 
+    public String getClassifier() {
+        return this.classifier;
+    }
+
     public void setClassifier(String classifier) {
         this.classifier = classifier;
     }
 
+    public String getBalancing() {
+        return this.balancing;
+    }
+
     public void setBalancing(String balancing) {
         this.balancing = balancing;
     }
 
+    public String getFeatureSelection() {
+        return this.featureSelection;
+    }
+
     public void setFeatureSelection(String featureSelection) {
         this.featureSelection = featureSelection;
     }
 
+    public String getSensitivity() {
+        return this.sensitivity;
+    }
+
     public void setSensitivity(String sensitivity) {
         this.sensitivity = sensitivity;
     }
@@ -86,22 +108,130 @@ public class WekaResult {
         this.recall = recall;
     }
 
+    public double getAuc() {
+        return this.auc;
+    }
+
     public void setAuc(double auc) {
         this.auc = auc;
     }
 
+    public double getKappa() {
+        return this.kappa;
+    }
+
     public void setKappa(double kappa) {
         this.kappa = kappa;
     }
 
+    // Same digits as BigDecimal.valueOf(value).toPlainString(), appended in place, as only values below 10^-3 are
+    // printed by Double.toString in scientific notation
+    private static void appendPlain(StringBuilder line, double value) {
+        int start = line.length();
+        line.append(value);
+        if (line.indexOf("E", start) >= 0) {
+            line.setLength(start);
+            line.append(BigDecimal.valueOf(value).toPlainString());
+        }
+    }
+
+    // Quoted as in RFC 4180 when it holds a comma or a quote, as names given by the plan may. Shared by the other CSV
+    // files holding such names
+    static void appendText(StringBuilder line, String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"')
+                line.append('"');
+            line.append(c);
+        }
+        line.append('"');
+    }
+
+    private static List<String> splitCSVLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"')
+                    field.append(c);
+                else if (i + 1 < line.length() && line.charAt(i + 1) == '"')
+                    field.append(line.charAt(++i));
+                else
+                    quoted = false;
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    public void appendCSVLine(StringBuilder line) {
+        appendText(line, this.dataset);
+        line.append(',').append(this.numTrainingReleases).append(',').append(this.percentTrainingReleases)
+                .append("%,").append(this.percentDefectiveInTraining).append("%,")
+                .append(this.percentDefectiveInTesting).append("%,");
+        appendText(line, this.classifier);
+        line.append(',');
+        appendText(line, this.balancing);
+        line.append(',');
+        appendText(line, this.featureSelection);
+        line.append(',');
+        appendText(line, this.sensitivity);
+        line.append(',').append(this.tP).append(',').append(this.fP).append(',').append(this.tN).append(',')
+                .append(this.fN).append(',');
+        appendPlain(line, this.precision);
+        line.append(',');
+        appendPlain(line, this.recall);
+        line.append(',');
+        appendPlain(line, this.auc);
+        line.append(',');
+        appendPlain(line, this.kappa);
+    }
+
     public String toCSVLine() {
-        return this.dataset + "," + this.numTrainingReleases + "," + this.percentTrainingReleases + "%," +
-                this.percentDefectiveInTraining + "%," + this.percentDefectiveInTesting + "%," + this.classifier + "," +
-                this.balancing + "," + this.featureSelection + "," + this.sensitivity + "," + this.tP + "," +
-                this.fP + "," + this.tN + "," + this.fN + "," +
-                (Double.isNaN(this.precision) ? this.precision : BigDecimal.valueOf(this.precision).toPlainString()) +
-                "," + BigDecimal.valueOf(this.recall).toPlainString() + "," +
-                BigDecimal.valueOf(this.auc).toPlainString() + "," + BigDecimal.valueOf(this.kappa).toPlainString();
+        StringBuilder line = new StringBuilder();
+        appendCSVLine(line);
+        return line.toString();
+    }
+
+    private static int parsePercent(String field) {
+        return Integer.parseInt(field.substring(0, field.length() - 1));
+    }
+
+    public static WekaResult fromCSVLine(String line) {
+        String[] fields = splitCSVLine(line).toArray(new String[0]);
+        WekaResult wekaResult = new WekaResult();
+        wekaResult.dataset = fields[0];
+        wekaResult.numTrainingReleases = Integer.parseInt(fields[1]);
+        wekaResult.percentTrainingReleases = parsePercent(fields[2]);
+        wekaResult.percentDefectiveInTraining = parsePercent(fields[3]);
+        wekaResult.percentDefectiveInTesting = parsePercent(fields[4]);
+        wekaResult.classifier = fields[5];
+        wekaResult.balancing = fields[6];
+        wekaResult.featureSelection = fields[7];
+        wekaResult.sensitivity = fields[8];
+        wekaResult.tP = Integer.parseInt(fields[9]);
+        wekaResult.fP = Integer.parseInt(fields[10]);
+        wekaResult.tN = Integer.parseInt(fields[11]);
+        wekaResult.fN = Integer.parseInt(fields[12]);
+        wekaResult.precision = Double.parseDouble(fields[13]);
+        wekaResult.recall = Double.parseDouble(fields[14]);
+        wekaResult.auc = Double.parseDouble(fields[15]);
+        wekaResult.kappa = Double.parseDouble(fields[16]);
+        return wekaResult;
     }
 
 }
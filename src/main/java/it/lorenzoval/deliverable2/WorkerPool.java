@@ -0,0 +1,178 @@
+package it.lorenzoval.deliverable2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Coordinator side of the worker processes: cells are pulled one at a time by each connected worker, which leaves
+// the trained cell in the shared cache, so results still reach the output in plan order through the usual pass
+public class WorkerPool implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(WorkerPool.class.getName());
+    private static final int CONNECT_TIMEOUT_MILLIS = 60000;
+    private final ServerSocket server;
+    private final List<Process> processes;
+    private final List<Connection> connections;
+    private final ExecutorService executor;
+
+    private WorkerPool(ServerSocket server, List<Process> processes, List<Connection> connections) {
+        this.server = server;
+        this.processes = processes;
+        this.connections = connections;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, connections.size()));
+    }
+
+    // Workers on other nodes can join by running EvaluationWorker against the bind address, as long as they see the
+    // same snapshot and cache directory paths. A worker not replying to a task within the timeout is given up on, so
+    // that a hung one cannot hang the coordinator
+    public static WorkerPool start(int workers, String bindAddress, File snapshot, File cacheDirectory,
+                                   int taskTimeoutMillis) throws IOException {
+        ServerSocket server = new ServerSocket(0, workers, InetAddress.getByName(bindAddress));
+        List<Process> processes = new ArrayList<>();
+        List<Connection> connections = new ArrayList<>();
+        try {
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            for (int i = 0; i < workers; i++)
+                processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                        EvaluationWorker.class.getName(), server.getInetAddress().getHostAddress(),
+                        Integer.toString(server.getLocalPort()), snapshot.getPath(), cacheDirectory.getPath())
+                        .inheritIO().start());
+            server.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+            for (int i = 0; i < workers; i++)
+                connections.add(new Connection(server.accept(), taskTimeoutMillis));
+        } catch (SocketTimeoutException e) {
+            // Whoever did not show up is not waited for, cells left over are trained by the coordinator
+            logger.log(Level.WARNING, "Only {0} of {1} workers connected", new Object[]{connections.size(), workers});
+        } catch (IOException e) {
+            for (Process process : processes)
+                process.destroy();
+            server.close();
+            throw e;
+        }
+        return new WorkerPool(server, processes, connections);
+    }
+
+    // Blocks until every task is done or every worker is gone, and returns the training time the workers reported
+    // for each task done. Failed tasks are only logged, the task of a worker lost or timed out goes back to the queue
+    // for the others, and the coordinator trains whatever is still missing from the cache.
+    public Map<CellTask, Long> run(List<CellTask> tasks) throws InterruptedException {
+        Queue<CellTask> queue = new ConcurrentLinkedQueue<>(tasks);
+        Map<CellTask, Long> trainingTimes = new ConcurrentHashMap<>();
+        List<Callable<Void>> jobs = new ArrayList<>();
+        for (Connection connection : this.connections)
+            jobs.add(() -> {
+                connection.drain(queue, trainingTimes);
+                return null;
+            });
+        this.executor.invokeAll(jobs);
+        return trainingTimes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.executor.shutdown();
+        for (Connection connection : this.connections)
+            connection.close();
+        for (Process process : this.processes) {
+            try {
+                if (!process.waitFor(10, TimeUnit.SECONDS))
+                    process.destroy();
+            } catch (InterruptedException e) {
+                process.destroy();
+                Thread.currentThread().interrupt();
+            }
+        }
+        this.server.close();
+    }
+
+    private static class Connection {
+
+        private final Socket socket;
+        private final ObjectOutputStream out;
+        private final ObjectInputStream in;
+        private boolean alive;
+
+        private Connection(Socket socket, int taskTimeoutMillis) throws IOException {
+            this.socket = socket;
+            // Bounds the wait for the reply to each task
+            this.socket.setSoTimeout(taskTimeoutMillis);
+            this.out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            // Header first, or both ends would wait for the other one's
+            this.out.flush();
+            this.in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.alive = true;
+        }
+
+        private void drain(Queue<CellTask> queue, Map<CellTask, Long> trainingTimes) {
+            CellTask task;
+            while (this.alive && (task = queue.poll()) != null) {
+                try {
+                    this.out.writeObject(task);
+                    // Fresh object graph for every task, or the stream would keep them all
+                    this.out.reset();
+                    this.out.flush();
+                    Object reply = this.in.readObject();
+                    if (reply instanceof String)
+                        logger.log(Level.WARNING, "Worker failed on release {0}: {1}",
+                                new Object[]{task.getRelease(), reply});
+                    else
+                        trainingTimes.put(task, (Long) reply);
+                } catch (SocketTimeoutException e) {
+                    // The stream is left midway through a reply, so the worker cannot be talked to anymore
+                    logger.log(Level.WARNING, "Worker {0} timed out on release {1}",
+                            new Object[]{this.socket.getRemoteSocketAddress(), task.getRelease()});
+                    this.alive = false;
+                    queue.add(task);
+                    closeQuietly();
+                } catch (IOException | ClassNotFoundException e) {
+                    logger.log(Level.WARNING, "Lost worker {0}", this.socket.getRemoteSocketAddress());
+                    this.alive = false;
+                    queue.add(task);
+                }
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                this.socket.close();
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Worker already gone", e);
+            }
+        }
+
+        private void close() {
+            try {
+                if (this.alive) {
+                    // Null tells the worker to exit
+                    this.out.writeObject(null);
+                    this.out.flush();
+                }
+                this.socket.close();
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Worker already gone", e);
+            }
+        }
+
+    }
+
+}